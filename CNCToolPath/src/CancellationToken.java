@@ -0,0 +1,40 @@
+import java.util.concurrent.CancellationException;
+
+/*
+ *  Lets a running calculation be aborted from another thread.
+ *
+ *  The calculation polls checkCancelled in its loops, which throws a
+ *  CancellationException once cancel was called. A token can not be reset,
+ *  every run gets its own. NONE is never cancelled.
+ */
+public class CancellationToken {
+
+	public static final CancellationToken NONE = new CancellationToken(false);
+
+	private final boolean cancellable;
+	private volatile boolean cancelled = false;
+
+	public CancellationToken() {
+		this(true);
+	}
+
+	private CancellationToken(boolean cancellable) {
+		this.cancellable = cancellable;
+	}
+
+	public void cancel() {
+		if (cancellable) {
+			cancelled = true;
+		}
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	public void checkCancelled() {
+		if (cancelled) {
+			throw new CancellationException("Calculation cancelled");
+		}
+	}
+}
@@ -5,36 +5,27 @@ import java.util.List;
 
 public class Contour2D {
 	public String name;
-	public List<Point2D> path;
+	public Polyline2D path;
 	public Color color;
 	
-	public Contour2D(String name, List<Point2D> path, Color color) {
+	public Contour2D(String name, Polyline2D path, Color color) {
 		this.name = name;
 		this.path = path;
 		this.color = color;
 	}
 
+	public Contour2D(String name, List<Point2D> path, Color color) {
+		this(name, Polyline2D.of(path), color);
+	}
+
 	public void dumpTo(PrintStream out, boolean polarCoordinates) {
 		out.println("----------------------------------------");
 		out.println("Contour: " + name + " #Points: " + path.size() + "["+(polarCoordinates?"POLAR COORDINATES":"KARTESIAN COORDINATES")+"]");
-		Float lastAngle = null;
-		for(Point2D p : path) {
-			if ( polarCoordinates ) {
-				//float angle = (float) ((float) Math.atan2(p.getX(), p.getY()) * 180.0 / Math.PI);
-				float angle = (float) ((float) StrictMath.atan2(p.getY(), p.getX()) * 180.0 / Math.PI);
-				if(lastAngle != null && angle - lastAngle < -180)
-					angle += 360;
-				else if(lastAngle != null && angle - lastAngle > 180)
-					angle -= 360;
-//				if(angle < 0)
-//					angle = 360f + angle;
-				float radius = (float) Math.sqrt(p.getX()*p.getX() + p.getY()*p.getY());
-				
-				//out.print("(" + p.getX() + "; " + p.getY() + ") = ");	
-				out.println(radius + " " + angle);		
-				lastAngle = angle;
-			} else {
-				out.println(p.getX() + " " + p.getY());				
+		if ( polarCoordinates ) {
+			PolarTransform.DEFAULT.transform(path, false, (radius, angle) -> out.println((float) radius + " " + (float) angle));
+		} else {
+			for(int i=0; i<path.size(); i++) {
+				out.println(path.getX(i) + " " + path.getY(i));
 			}
 		}
 		out.println();
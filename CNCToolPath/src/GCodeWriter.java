@@ -0,0 +1,307 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ *  Writes toolpaths as G-code.
+ *
+ *  Every contour is cut as a closed loop: rapid move (G0) to the first point
+ *  at safe height, plunge to the cut depth, linear moves (G1) along the path
+ *  and back to the first point, retract to safe height. Coordinates are
+ *  modal, an axis is only written when its rounded value changes.
+ *
+ *  With a PolarTransform the writer targets the rotary engraver: X is the
+ *  radius and A the unwrapped angle in degrees.
+ *
+ *  Output goes through one reusable direct buffer into the channel and
+ *  numbers are formatted straight into that buffer, so no Strings are created
+ *  per move.
+ */
+public class GCodeWriter implements Closeable {
+
+	public static final double DEFAULT_FEED_RATE = 300;
+	public static final double DEFAULT_PLUNGE_RATE = 100;
+	public static final double DEFAULT_CUT_DEPTH = -0.2;
+	public static final double DEFAULT_SAFE_HEIGHT = 2;
+	public static final int DEFAULT_DECIMALS = 3;
+
+	private static final int BUFFER_SIZE = 1 << 20;
+	// longest line we write is well below this, the buffer is drained before
+	private static final int LINE_RESERVE = 256;
+	private static final long[] POWERS_OF_TEN = {
+		1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L
+	};
+
+	private final WritableByteChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final byte[] digits = new byte[20];
+
+	private final double feedRate;
+	private final double plungeRate;
+	private final double cutDepth;
+	private final double safeHeight;
+	private final int decimals;
+	private final double scale;
+	private final PolarTransform polar;
+	private final byte secondAxis;
+
+	// last written values, already rounded to decimals
+	private long lastX, lastY, lastZ;
+	private boolean positionKnown = false;
+	private boolean heightKnown = false;
+	private double lastFeed = Double.NaN;
+
+	public GCodeWriter(WritableByteChannel channel) {
+		this(channel, DEFAULT_FEED_RATE, DEFAULT_PLUNGE_RATE, DEFAULT_CUT_DEPTH, DEFAULT_SAFE_HEIGHT, DEFAULT_DECIMALS);
+	}
+
+	public GCodeWriter(WritableByteChannel channel, double feedRate, double plungeRate, double cutDepth, double safeHeight, int decimals) {
+		this(channel, feedRate, plungeRate, cutDepth, safeHeight, decimals, null);
+	}
+
+	/*
+	 *  polar may be null for cartesian output.
+	 */
+	public GCodeWriter(WritableByteChannel channel, double feedRate, double plungeRate, double cutDepth, double safeHeight, int decimals,
+			PolarTransform polar) {
+		checkSettings(feedRate, plungeRate, cutDepth, safeHeight, decimals);
+		this.channel = channel;
+		this.feedRate = feedRate;
+		this.plungeRate = plungeRate;
+		this.cutDepth = cutDepth;
+		this.safeHeight = safeHeight;
+		this.decimals = decimals;
+		this.scale = POWERS_OF_TEN[decimals];
+		this.polar = polar;
+		this.secondAxis = (byte) (polar != null ? 'A' : 'Y');
+	}
+
+	/*
+	 *  Throws the IllegalArgumentException the constructor would throw for
+	 *  these settings, so they can be checked before any file is opened.
+	 */
+	public static void checkSettings(double feedRate, double plungeRate, double cutDepth, double safeHeight, int decimals) {
+		if (!(feedRate > 0) || !(plungeRate > 0)) {
+			throw new IllegalArgumentException("feed rates must be greater than 0");
+		}
+		if (decimals < 0 || decimals >= POWERS_OF_TEN.length) {
+			throw new IllegalArgumentException("decimals must be between 0 and " + (POWERS_OF_TEN.length - 1));
+		}
+		if (!(safeHeight > cutDepth)) {
+			throw new IllegalArgumentException("safeHeight must be above cutDepth");
+		}
+	}
+
+	public static GCodeWriter open(Path file) throws IOException {
+		return new GCodeWriter(openChannel(file));
+	}
+
+	public static GCodeWriter open(Path file, PolarTransform polar) throws IOException {
+		return open(file, DEFAULT_FEED_RATE, DEFAULT_PLUNGE_RATE, DEFAULT_CUT_DEPTH, DEFAULT_SAFE_HEIGHT, DEFAULT_DECIMALS, polar);
+	}
+
+	public static GCodeWriter open(Path file, double feedRate, double plungeRate, double cutDepth, double safeHeight, int decimals,
+			PolarTransform polar) throws IOException {
+		FileChannel channel = openChannel(file);
+		try {
+			return new GCodeWriter(channel, feedRate, plungeRate, cutDepth, safeHeight, decimals, polar);
+		} catch (IllegalArgumentException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private static FileChannel openChannel(Path file) throws IOException {
+		return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	/*
+	 *  Millimeters, absolute coordinates, spindle on, move to safe height.
+	 */
+	public void writeHeader() throws IOException {
+		writeAscii("G21\nG90\nG17\nM3\n");
+		moveZ(false, safeHeight, Double.NaN);
+	}
+
+	public void writeFooter() throws IOException {
+		moveZ(false, safeHeight, Double.NaN);
+		writeAscii("M5\nM2\n");
+	}
+
+	public void writeContour(Contour2D contour) throws IOException {
+		writeContour(contour.name, contour.path);
+	}
+
+	public void writeContour(String name, Polyline2D path) throws IOException {
+		if (path.isEmpty()) {
+			return;
+		}
+		if (name != null) {
+			writeComment(name);
+		}
+		if (polar != null) {
+			writePolarContour(path);
+			return;
+		}
+		moveZ(false, safeHeight, Double.NaN);
+		moveXY(false, path.getX(0), path.getY(0), Double.NaN);
+		moveZ(true, cutDepth, plungeRate);
+		for (int i = 1; i < path.size(); i++) {
+			moveXY(true, path.getX(i), path.getY(i), feedRate);
+		}
+		moveXY(true, path.getX(0), path.getY(0), feedRate);
+		moveZ(false, safeHeight, Double.NaN);
+	}
+
+	private void writePolarContour(Polyline2D path) throws IOException {
+		// the transform already closes the path at the unwrapped angle
+		double[] coords = polar.transform(path, true);
+		moveZ(false, safeHeight, Double.NaN);
+		moveXY(false, coords[0], coords[1], Double.NaN);
+		moveZ(true, cutDepth, plungeRate);
+		for (int i = 2; i < coords.length; i += 2) {
+			moveXY(true, coords[i], coords[i + 1], feedRate);
+		}
+		moveZ(false, safeHeight, Double.NaN);
+	}
+
+	public void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+
+	private void moveXY(boolean cut, double x, double y, double feed) throws IOException {
+		long rx = round(x), ry = round(y);
+		boolean writeX = !positionKnown || rx != lastX;
+		boolean writeY = !positionKnown || ry != lastY;
+		if (!writeX && !writeY) {
+			return;
+		}
+		reserve();
+		startMove(cut);
+		if (writeX) {
+			buffer.put((byte) ' ').put((byte) 'X');
+			writeFixed(rx);
+		}
+		if (writeY) {
+			buffer.put((byte) ' ').put(secondAxis);
+			writeFixed(ry);
+		}
+		writeFeed(cut, feed);
+		buffer.put((byte) '\n');
+		lastX = rx;
+		lastY = ry;
+		positionKnown = true;
+	}
+
+	private void moveZ(boolean cut, double z, double feed) throws IOException {
+		long rz = round(z);
+		if (heightKnown && rz == lastZ) {
+			return;
+		}
+		reserve();
+		startMove(cut);
+		buffer.put((byte) ' ').put((byte) 'Z');
+		writeFixed(rz);
+		writeFeed(cut, feed);
+		buffer.put((byte) '\n');
+		lastZ = rz;
+		heightKnown = true;
+	}
+
+	private void startMove(boolean cut) {
+		buffer.put((byte) 'G').put((byte) (cut ? '1' : '0'));
+	}
+
+	private void writeFeed(boolean cut, double feed) {
+		if (cut && feed != lastFeed) {
+			buffer.put((byte) ' ').put((byte) 'F');
+			writeFixed(round(feed));
+			lastFeed = feed;
+		}
+	}
+
+	private void writeComment(String text) throws IOException {
+		reserve();
+		buffer.put((byte) '(');
+		int n = Math.min(text.length(), LINE_RESERVE - 4);
+		for (int i = 0; i < n; i++) {
+			char c = text.charAt(i);
+			// parentheses would end the comment, non ASCII is not understood by controllers
+			buffer.put((byte) (c == '(' || c == ')' || c < ' ' || c > '~' ? '_' : c));
+		}
+		buffer.put((byte) ')').put((byte) '\n');
+	}
+
+	private void writeAscii(String text) throws IOException {
+		for (int i = 0; i < text.length(); i++) {
+			if (!buffer.hasRemaining()) {
+				flush();
+			}
+			buffer.put((byte) text.charAt(i));
+		}
+	}
+
+	private long round(double value) {
+		if (Double.isNaN(value) || Double.isInfinite(value) || Math.abs(value) * scale >= Long.MAX_VALUE / 10) {
+			throw new IllegalArgumentException("Coordinate out of range: " + value);
+		}
+		return Math.round(value * scale);
+	}
+
+	/*
+	 *  Writes value / 10^decimals without trailing zeros in the fraction.
+	 */
+	private void writeFixed(long value) {
+		if (value < 0) {
+			buffer.put((byte) '-');
+			value = -value;
+		}
+		long divisor = POWERS_OF_TEN[decimals];
+		long integer = value / divisor;
+		long fraction = value % divisor;
+
+		int n = 0;
+		do {
+			digits[n++] = (byte) ('0' + integer % 10);
+			integer /= 10;
+		} while (integer > 0);
+		while (n > 0) {
+			buffer.put(digits[--n]);
+		}
+
+		if (fraction != 0) {
+			buffer.put((byte) '.');
+			int places = decimals;
+			while (fraction % 10 == 0) {
+				fraction /= 10;
+				places--;
+			}
+			for (int i = places - 1; i >= 0; i--) {
+				buffer.put((byte) ('0' + (fraction / POWERS_OF_TEN[i]) % 10));
+			}
+		}
+	}
+
+	private void reserve() throws IOException {
+		if (buffer.remaining() < LINE_RESERVE) {
+			flush();
+		}
+	}
+}
@@ -1,5 +1,6 @@
 
 
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.swing.*;
 import javax.swing.event.*;
 import javax.swing.text.*;
@@ -14,11 +15,15 @@ import javax.swing.text.*;
  *     from the start.
  *  b) if you insert text at the beginning of the Document, then you would
  *     want to remove lines from the end.
+ *
+ *  However many inserts happen, at most one trim is pending on the EDT and
+ *  it removes all excess lines with a single remove.
  */
 public class LimitLinesDocumentListener implements DocumentListener
 {
 	private int maximumLines;
 	private boolean isRemoveFromStart;
+	private final AtomicBoolean trimScheduled = new AtomicBoolean();
 
 	/*
 	 *  Specify the number of lines to be stored in the Document.
@@ -67,13 +72,19 @@ public class LimitLinesDocumentListener implements DocumentListener
 	public void insertUpdate(final DocumentEvent e)
 	{
 		//  Changes to the Document can not be done within the listener
-		//  so we need to add the processing to the end of the EDT
+		//  so we need to add the processing to the end of the EDT. The
+		//  pending trim also covers all inserts until it runs.
+
+		if (! trimScheduled.compareAndSet(false, true)) return;
+
+		final Document document = e.getDocument();
 
 		SwingUtilities.invokeLater( new Runnable()
 		{
 			public void run()
 			{
-				removeLines(e);
+				trimScheduled.set( false );
+				removeLines(document);
 			}
 		});
 	}
@@ -84,33 +95,32 @@ public class LimitLinesDocumentListener implements DocumentListener
 	/*
 	 *  Remove lines from the Document when necessary
 	 */
-	private void removeLines(DocumentEvent e)
+	private void removeLines(Document document)
 	{
 		//  The root Element of the Document will tell us the total number
 		//  of line in the Document.
 
-		Document document = e.getDocument();
 		Element root = document.getDefaultRootElement();
+		int excess = root.getElementCount() - maximumLines;
 
-		while (root.getElementCount() > maximumLines)
+		if (excess <= 0) return;
+
+		if (isRemoveFromStart)
 		{
-			if (isRemoveFromStart)
-			{
-				removeFromStart(document, root);
-			}
-			else
-			{
-				removeFromEnd(document, root);
-			}
+			removeFromStart(document, root, excess);
+		}
+		else
+		{
+			removeFromEnd(document, root, excess);
 		}
 	}
 
 	/*
-	 *  Remove lines from the start of the Document
+	 *  Remove the first lines of the Document in one edit
 	 */
-	private void removeFromStart(Document document, Element root)
+	private void removeFromStart(Document document, Element root, int lines)
 	{
-		Element line = root.getElement(0);
+		Element line = root.getElement(lines - 1);
 		int end = line.getEndOffset();
 
 		try
@@ -124,20 +134,19 @@ public class LimitLinesDocumentListener implements DocumentListener
 	}
 
 	/*
-	 *  Remove lines from the end of the Document
+	 *  Remove the last lines of the Document in one edit
 	 */
-	private void removeFromEnd(Document document, Element root)
+	private void removeFromEnd(Document document, Element root, int lines)
 	{
 		//  We use start minus 1 to make sure we remove the newline
 		//  character of the previous line
 
-		Element line = root.getElement(root.getElementCount() - 1);
+		Element line = root.getElement(root.getElementCount() - lines);
 		int start = line.getStartOffset();
-		int end = line.getEndOffset();
 
 		try
 		{
-			document.remove(start - 1, end - start);
+			document.remove(start - 1, document.getLength() - start + 1);
 		}
 		catch(BadLocationException ble)
 		{
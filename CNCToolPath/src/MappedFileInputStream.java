@@ -0,0 +1,68 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ *  Reads a file through memory mapped windows of its channel. The file is
+ *  mapped piece by piece while it is read, so large files are neither copied
+ *  onto the heap nor mapped as a whole.
+ */
+class MappedFileInputStream extends InputStream {
+
+	private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+	private final FileChannel channel;
+	private final long size;
+	private long windowStart = 0;
+	private MappedByteBuffer window;
+
+	MappedFileInputStream(Path path) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		this.size = channel.size();
+	}
+
+	private boolean ensureAvailable() throws IOException {
+		if (window != null && window.hasRemaining()) {
+			return true;
+		}
+		long next = window == null ? 0 : windowStart + window.capacity();
+		if (next >= size) {
+			return false;
+		}
+		windowStart = next;
+		window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(WINDOW_SIZE, size - windowStart));
+		return window.hasRemaining();
+	}
+
+	@Override
+	public int read() throws IOException {
+		return ensureAvailable() ? window.get() & 0xff : -1;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!ensureAvailable()) {
+			return -1;
+		}
+		int n = Math.min(len, window.remaining());
+		window.get(b, off, n);
+		return n;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return window != null ? window.remaining() : 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		window = null;
+		channel.close();
+	}
+}
@@ -2,6 +2,12 @@
 
 import java.io.*;
 import java.awt.*;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.event.*;
 import javax.swing.text.*;
 
@@ -14,14 +20,52 @@ import javax.swing.text.*;
  *  Messages can either be appended to the console or inserted as the first
  *  line of the console
  *
- *  You can limit the number of lines to hold in the Document.
+ *  You can limit the number of lines to hold in the Document, by default
+ *  DEFAULT_MESSAGE_LINES.
+ *
+ *  Lines written from any thread are queued and added to the Document on
+ *  the EDT once per frame, consecutive lines of the same color in a single
+ *  edit. Of a burst longer than the line limit only the last lines are kept.
+ *
+ *  The text component keeps its own Document, there is no ring buffer of
+ *  lines behind it. A flush adds at most the line limit, and the
+ *  LimitLinesDocumentListener removes the excess with one edit right after
+ *  it, so the Document never holds more than twice the limit. Like a ring
+ *  buffer that costs one insert and one remove per frame, and positions,
+ *  selection and highlights keep working as in any Document.
  */
 public class MessageConsole
 {
+	public static final int DEFAULT_MESSAGE_LINES = 10000;
+	//  Milliseconds between Document updates, about one frame
+	private static final int FLUSH_DELAY = 16;
+
 	private JTextComponent textComponent;
 	private Document document;
 	private boolean isAppend;
 	private DocumentListener limitLinesListener;
+	private volatile int messageLines;
+	private final ConcurrentLinkedQueue<PendingLine> pendingLines = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+	private final Timer flushTimer;
+
+	/*
+	 *  Text waiting for the next flush. When appending, newLine asks for the
+	 *  text to start on a new line unless it is the first text of the Document.
+	 */
+	private static class PendingLine
+	{
+		final String text;
+		final AttributeSet attributes;
+		final boolean newLine;
+
+		PendingLine(String text, AttributeSet attributes, boolean newLine)
+		{
+			this.text = text;
+			this.attributes = attributes;
+			this.newLine = newLine;
+		}
+	}
 
 	public MessageConsole(JTextComponent textComponent)
 	{
@@ -41,6 +85,10 @@ public class MessageConsole
 		this.document = textComponent.getDocument();
 		this.isAppend = isAppend;
 		textComponent.setEditable( false );
+
+		flushTimer = new Timer(FLUSH_DELAY, e -> flushPendingLines());
+		flushTimer.setRepeats( false );
+		setMessageLines( DEFAULT_MESSAGE_LINES );
 	}
 
 	/*
@@ -99,6 +147,102 @@ public class MessageConsole
 
 		limitLinesListener = new LimitLinesDocumentListener(lines, isAppend);
 		document.addDocumentListener( limitLinesListener );
+		messageLines = lines;
+	}
+
+	/*
+	 *  Queue a line for the Document, may be called from any thread
+	 */
+	private void addLine(String line, AttributeSet attributes, boolean newLine)
+	{
+		pendingLines.add( new PendingLine(line, attributes, newLine) );
+
+		if (flushScheduled.compareAndSet(false, true))
+			SwingUtilities.invokeLater( flushTimer::restart );
+	}
+
+	/*
+	 *  Add all queued lines to the Document. Runs on the EDT.
+	 */
+	private void flushPendingLines()
+	{
+		//  Lines queued from now on schedule the next flush
+
+		flushScheduled.set( false );
+
+		//  Only the last lines of a long burst would survive the line limit
+		//  anyway, so keep no more than that
+
+		int limit = messageLines;
+		ArrayDeque<PendingLine> lines = new ArrayDeque<>(Math.min(limit, 1024));
+		PendingLine pending;
+		int dropped = 0;
+
+		while ((pending = pendingLines.poll()) != null)
+		{
+			if (lines.size() == limit)
+			{
+				lines.removeFirst();
+				dropped++;
+			}
+
+			lines.addLast( pending );
+		}
+
+		if (lines.isEmpty()) return;
+
+		if (dropped > 0)
+		{
+			String note = "... " + dropped + " lines skipped";
+			lines.addFirst( new PendingLine(isAppend ? note : note + "\n", null, true) );
+		}
+
+		try
+		{
+			//  One insert per run of lines with the same attributes, usually
+			//  only one for the whole flush. Inserted lines go on top newest
+			//  first, so they are collected in reverse.
+
+			StringBuilder run = new StringBuilder();
+			Iterator<PendingLine> it = isAppend ? lines.iterator() : lines.descendingIterator();
+			AttributeSet runAttributes = isAppend ? lines.peekFirst().attributes : lines.peekLast().attributes;
+			int offset = isAppend ? document.getLength() : 0;
+
+			while (it.hasNext())
+			{
+				PendingLine line = it.next();
+
+				if (line.attributes != runAttributes)
+				{
+					offset = insertRun(run, runAttributes, offset);
+					run.setLength(0);
+					runAttributes = line.attributes;
+				}
+
+				//  The Document knows best whether there is text before the line
+
+				if (isAppend && line.newLine && offset + run.length() > 0)
+					run.append( '\n' );
+
+				run.append( line.text );
+			}
+
+			insertRun(run, runAttributes, offset);
+
+			textComponent.setCaretPosition( isAppend ? document.getLength() : 0 );
+		}
+		catch (BadLocationException ble) {}
+	}
+
+	/*
+	 *  Returns the offset following the inserted text
+	 */
+	private int insertRun(StringBuilder run, AttributeSet attributes, int offset) throws BadLocationException
+	{
+		if (run.length() == 0) return offset;
+
+		document.insertString(offset, run.toString(), attributes);
+		return offset + run.length();
 	}
 
 	/*
@@ -113,7 +257,8 @@ public class MessageConsole
 		private SimpleAttributeSet attributes;
 		private PrintStream printStream;
 		private StringBuffer buffer = new StringBuffer(80);
-		private boolean isFirstLine;
+		//  newLines written but not yet queued, only used by the writing thread
+		private int pendingNewLines;
 
 		/*
 		 *  Specify the option text color and PrintStream
@@ -128,8 +273,10 @@ public class MessageConsole
 
 			this.printStream = printStream;
 
-			if (isAppend)
-				isFirstLine = true;
+			//  In case both the standard out and standard err are being redirected
+			//  the first line of each starts on a new line
+
+			pendingNewLines = 1;
 		}
 
 		/*
@@ -153,34 +300,42 @@ public class MessageConsole
 			else
 			    handleInsert(message);
 
+			if (printStream != null)
+			{
+				printStream.print(message);
+			}
+
 			reset();
 		}
 
 		/*
-		 *	We don't want to have blank lines in the Document. The first line
-		 *  added will simply be the message. For additional lines it will be:
+		 *	We don't want to have blank lines in the Document. The message is
+		 *  shown right away, a newLine is held back until the next message and
+		 *  the flush puts it before that message, unless the Document is empty
+		 *  by then:
 		 *
 		 *  newLine + message
 		 */
 		private void handleAppend(String message)
 		{
-			//  This check is needed in case the text in the Document has been
-			//	cleared. The buffer may contain the EOL string from the previous
-			//  message.
-
-			if (document.getLength() == 0)
-				buffer.setLength(0);
+			boolean endsLine = message.endsWith(EOL);
+			String text = endsLine ? message.substring(0, message.length() - EOL.length()) : message;
 
-			if (EOL.equals(message))
-			{
-				buffer.append(message);
-			}
-			else
+			if (text.length() > 0)
 			{
-				buffer.append(message);
-				clearBuffer();
+				//  Blank lines in between are kept
+
+				for (int i = 1; i < pendingNewLines; i++)
+					buffer.append("\n");
+
+				buffer.append(text);
+				addLine(buffer.toString(), attributes, pendingNewLines > 0);
+				buffer.setLength(0);
+				pendingNewLines = 0;
 			}
 
+			if (endsLine)
+				pendingNewLines++;
 		}
 		/*
 		 *  We don't want to merge the new message with the existing message
@@ -192,52 +347,13 @@ public class MessageConsole
 		{
 			buffer.append(message);
 
-			if (EOL.equals(message))
-			{
-				clearBuffer();
-			}
-		}
-
-		/*
-		 *  The message and the newLine have been added to the buffer in the
-		 *  appropriate order so we can now update the Document and send the
-		 *  text to the optional PrintStream.
-		 */
-		private void clearBuffer()
-		{
-			//  In case both the standard out and standard err are being redirected
-			//  we need to insert a newline character for the first line only
+			//  println writes message and newLine at once on current JDKs
 
-			if (isFirstLine && document.getLength() != 0)
+			if (message.endsWith(EOL))
 			{
-			    buffer.insert(0, "\n");
-			}
-
-			isFirstLine = false;
-			String line = buffer.toString();
-
-			try
-			{
-				if (isAppend)
-				{
-					int offset = document.getLength();
-					document.insertString(offset, line, attributes);
-					textComponent.setCaretPosition( document.getLength() );
-				}
-				else
-				{
-					document.insertString(0, line, attributes);
-					textComponent.setCaretPosition( 0 );
-				}
-			}
-			catch (BadLocationException ble) {}
-
-			if (printStream != null)
-			{
-				printStream.print(line);
+				addLine(buffer.toString(), attributes, false);
+				buffer.setLength(0);
 			}
-
-			buffer.setLength(0);
 		}
 	}
 }
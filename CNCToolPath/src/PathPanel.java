@@ -1,25 +1,133 @@
+import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.Point;
+import java.awt.Transparency;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
 import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 public class PathPanel extends JPanel implements MouseWheelListener, MouseListener, MouseMotionListener {
 
 	private List<CoordListener> coordListeners = new ArrayList<>();
-	private List<Contour2D> contours = new ArrayList<Contour2D>(); 
+	private final AtomicReference<ContourSnapshot> contours = new AtomicReference<>(new ContourSnapshot(0, List.of()));
 	double scaleFactor = 40;
 	double offsetX = 0;
 	double offsetY = 0;
+	private volatile PipelineMonitor monitor = PipelineMonitor.NONE;
+	
+	private static final int MARKER_SIZE = 4;
+	// more visible vertices than this in one contour are drawn without markers
+	private static final int MAX_MARKERS = 2000;
+	// keeps lines and markers at the border from being cut off too early
+	private static final int CULL_MARGIN = MARKER_SIZE + 2;
+	// only used by the renderer thread
+	private float[] markerBuffer = new float[256];
+	
+	// pixels the cached layer reaches beyond the panel on every side
+	private static final int LAYER_MARGIN = 256;
+	private final AtomicReference<DisplayList> displayList = new AtomicReference<>();
+	// layer of a replaced display list that no paint can still be blitting
+	private final AtomicReference<BufferedImage> spareLayer = new AtomicReference<>();
+	private final AtomicReference<View> pendingView = new AtomicReference<>();
+	private View requestedView;
+	private final ExecutorService renderer = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "PathPanel renderer");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
+	/*
+	 *  The contours shown, replaced as a whole on every change. Contours must
+	 *  not be modified once they are added.
+	 */
+	private static final class ContourSnapshot {
+		final long version;
+		final List<Contour2D> contours;
+
+		ContourSnapshot(long version, List<Contour2D> contours) {
+			this.version = version;
+			this.contours = contours;
+		}
+	}
+	
+	/*
+	 *  What a display list is drawn for: contour version, scale, panel size
+	 *  and pan offset. The graphics configuration of the screen, null if
+	 *  there is none, only decides the image format of the layer.
+	 */
+	private static final class View {
+		final ContourSnapshot snapshot;
+		final double scale;
+		final int width, height, offsetX, offsetY;
+		final GraphicsConfiguration gc;
+
+		View(ContourSnapshot snapshot, double scale, int width, int height, int offsetX, int offsetY, GraphicsConfiguration gc) {
+			this.snapshot = snapshot;
+			this.scale = scale;
+			this.width = width;
+			this.height = height;
+			this.offsetX = offsetX;
+			this.offsetY = offsetY;
+			this.gc = gc;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof View v && snapshot.version == v.snapshot.version && scale == v.scale && width == v.width && height == v.height
+					&& offsetX == v.offsetX && offsetY == v.offsetY;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(snapshot.version) * 31 + Double.hashCode(scale);
+		}
+	}
+	
+	/*
+	 *  All contours of one view rasterized by the renderer thread into an
+	 *  image that reaches LAYER_MARGIN pixels beyond every edge of the panel.
+	 *  The drawing origin is at (originX, originY) in the image.
+	 */
+	private static final class DisplayList {
+		final View view;
+		final BufferedImage layer;
+		final int originX, originY;
+
+		DisplayList(View view, BufferedImage layer, int originX, int originY) {
+			this.view = view;
+			this.layer = layer;
+			this.originX = originX;
+			this.originY = originY;
+		}
+
+		/*
+		 *  True if the layer can be blitted as it is.
+		 */
+		boolean covers(long version, double scale, int width, int height, int offsetX, int offsetY) {
+			return view.snapshot.version == version && view.scale == scale && view.width == width && view.height == height
+					&& Math.abs(offsetX - view.offsetX) <= LAYER_MARGIN && Math.abs(offsetY - view.offsetY) <= LAYER_MARGIN;
+		}
+	}
 	
 	public PathPanel() {
 		super();
@@ -39,43 +147,241 @@ public class PathPanel extends JPanel implements MouseWheelListener, MouseListen
         g2d.drawLine(area.x/2 + (int) this.offsetX, 0, area.x/2 + (int) this.offsetX, this.getHeight());
         g2d.drawLine(0, area.y/2 + (int) this.offsetY, this.getWidth(), area.y/2 + (int) this.offsetY);
 
-        contours.forEach( c -> {
-        	drawPolygon(g2d, c.path, c.color, area.x/2, area.y/2);
-        });
+        if (area.x <= 0 || area.y <= 0) {
+        	return;
+        }
+        ContourSnapshot snapshot = contours.get();
+        DisplayList list = displayList.get();
+        if (list == null || !list.covers(snapshot.version, scaleFactor, area.x, area.y, (int) offsetX, (int) offsetY)) {
+        	View view = new View(snapshot, scaleFactor, area.x, area.y, (int) offsetX, (int) offsetY, getGraphicsConfiguration());
+        	if (!view.equals(requestedView)) {
+        		requestedView = view;
+        		requestDisplayList(view);
+        	}
+        }
+        if (list == null) {
+        	return;
+        }
+        // until the new one is ready the last layer is moved and scaled to the current view
+        double ratio = scaleFactor / list.view.scale;
+        int originX = area.x/2 + (int) offsetX, originY = area.y/2 + (int) offsetY;
+        if (ratio == 1) {
+        	g2d.drawImage(list.layer, originX - list.originX, originY - list.originY, null);
+        } else {
+        	AffineTransform transform = AffineTransform.getTranslateInstance(originX - list.originX * ratio, originY - list.originY * ratio);
+        	transform.scale(ratio, ratio);
+        	g2d.drawImage(list.layer, transform, null);
+        }
+    }
+
+    /*
+     *  Queues a display list for the view. Requests made while the renderer is
+     *  busy are merged, only the latest one is drawn.
+     */
+    private void requestDisplayList(View view) {
+    	if (pendingView.getAndSet(view) == null) {
+    		renderer.execute(this::renderPendingViews);
+    	}
+    }
+
+    private void renderPendingViews() {
+    	View view;
+    	while ((view = pendingView.getAndSet(null)) != null) {
+    		try {
+    			DisplayList previous = displayList.getAndSet(rasterize(view));
+    			if (previous != null) {
+    				// paints run on the EDT, once this runs none of them can still use the old layer
+    				SwingUtilities.invokeLater(() -> spareLayer.set(previous.layer));
+    			}
+    		} catch (RuntimeException e) {
+    			e.printStackTrace();
+    		}
+    		repaint();
+    	}
+    }
+
+    /*
+     *  Draws all contours of the view into a layer image, so a pan up to
+     *  LAYER_MARGIN pixels only moves the image. The spare layer is reused if
+     *  the size did not change. Runs on the renderer thread.
+     */
+    private DisplayList rasterize(View view) {
+    	int points = 0;
+    	for (Contour2D c : view.snapshot.contours) {
+    		points += c.path.size();
+    	}
+    	PipelineMonitor.Span span = monitor.start(PipelineMonitor.Stage.RENDER, "layer", points);
+    	int w = view.width + 2 * LAYER_MARGIN, h = view.height + 2 * LAYER_MARGIN;
+    	int originX = view.width/2 + view.offsetX + LAYER_MARGIN, originY = view.height/2 + view.offsetY + LAYER_MARGIN;
+    	BufferedImage layer = spareLayer.getAndSet(null);
+    	boolean reused = layer != null && layer.getWidth() == w && layer.getHeight() == h
+    			&& (view.gc == null || view.gc.getColorModel(Transparency.TRANSLUCENT).equals(layer.getColorModel()));
+    	if (!reused) {
+    		// in the screen's format the blit needs no conversion
+    		layer = view.gc != null ? view.gc.createCompatibleImage(w, h, Transparency.TRANSLUCENT)
+    				: new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB_PRE);
+    	}
+    	Graphics2D g2d = layer.createGraphics();
+    	try {
+    		if (reused) {
+    			g2d.setComposite(AlphaComposite.Clear);
+    			g2d.fillRect(0, 0, w, h);
+    			g2d.setComposite(AlphaComposite.SrcOver);
+    		}
+    		for (Contour2D c : view.snapshot.contours) {
+    			drawPolygon(g2d, c.path, c.color, view.scale, originX, originY, w, h);
+    		}
+    	} finally {
+    		g2d.dispose();
+    	}
+    	span.stop(points);
+    	return new DisplayList(view, layer, originX, originY);
+    }
+
+    /*
+     *  Every layer drawn is recorded as one RENDER measurement.
+     */
+    public void setMonitor(PipelineMonitor monitor) {
+    	this.monitor = monitor != null ? monitor : PipelineMonitor.NONE;
     }
     
+    /*
+     *  The contour methods may be called from any thread, the display list
+     *  is drawn in the background and shown by the next repaint.
+     */
     public void addContour(Contour2D contour) {
-    	contours.add(contour);
-    	contour.dumpTo(System.out, true);
-    	repaint();
+    	updateContours(list -> list.add(contour));
+    }
+    
+    public void setContours(List<Contour2D> newContours) {
+    	updateContours(list -> {
+    		list.clear();
+    		list.addAll(newContours);
+    	});
     }
     
     public void removeAllContours() {
-    	contours.clear();
-    	repaint();
+    	updateContours(List::clear);
     }
     
     public Contour2D getContour(int index) {
-    	return contours.get(index);
+    	return contours.get().contours.get(index);
     }
     
-    private void drawPolygon(Graphics2D g2d, List<Point2D> polygon, Color color, int oX, int oY) {
-
+    public List<Contour2D> getContours() {
+    	return contours.get().contours;
+    }
+    
+    private void updateContours(Consumer<List<Contour2D>> change) {
+    	ContourSnapshot current, next;
+    	do {
+    		current = contours.get();
+    		List<Contour2D> list = new ArrayList<>(current.contours);
+    		change.accept(list);
+    		next = new ContourSnapshot(current.version + 1, Collections.unmodifiableList(list));
+    	} while (!contours.compareAndSet(current, next));
+    	repaint();
+    }
+    
+    /*
+     *  Draws the closed polygon as one Path2D into a width x height area, the
+     *  drawing origin at (tx, ty), scale pixels per mm. Segments completely on
+     *  the outer side of one edge of the area are left out, consecutive
+     *  vertices in the same pixel collapse into one. Vertex markers are only drawn while
+     *  no more than MAX_MARKERS vertices are visible, so the cost of a frame
+     *  depends on the pixels covered rather than on the number of points.
+     */
+    private void drawPolygon(Graphics2D g2d, Polyline2D polygon, Color color, double scale, double tx, double ty, int width, int height) {
         int n = polygon.size();
-        for (int i = 0; i < n; i++) {
-            Point2D p1 = polygon.get(i);
-            Point2D p2 = polygon.get((i + 1) % n);
-            g2d.setColor(color);
-            g2d.drawLine(oX + (int) (p1.getX()*scaleFactor)+(int) offsetX, oY + (int) (p1.getY()*scaleFactor)+(int) offsetY, oX + (int) (p2.getX()*scaleFactor)+(int) offsetX, oY + (int) (p2.getY()*scaleFactor)+(int) offsetY);
+        if (n == 0) {
+        	return;
         }
-        
-        int size = 4;
-        for (int i=0; i<n; i++) {
-            Point2D p1 = polygon.get(i);
-            g2d.setColor((i==0 ? Color.red : (i==n-1 ? Color.blue : Color.black) ) );
-            g2d.fillOval((int) (oX + p1.getX()*scaleFactor)+(int) offsetX-size/2, oY + (int) (p1.getY()*scaleFactor)+(int) offsetY-size/2, size, size);
+        double minX = -CULL_MARGIN, minY = -CULL_MARGIN;
+        double maxX = width + CULL_MARGIN, maxY = height + CULL_MARGIN;
+
+        Path2D.Float path = new Path2D.Float(Path2D.WIND_NON_ZERO, Math.min(n + 1, 4096));
+        int markers = 0;
+        boolean firstVisible = false, lastVisible = false;
+
+        double lastX = tx + polygon.getX(0) * scale, lastY = ty + polygon.getY(0) * scale;
+        int lastCode = outCode(lastX, lastY, minX, minY, maxX, maxY);
+        boolean penDown = false;
+        if (lastCode == 0) {
+        	path.moveTo(lastX, lastY);
+        	penDown = true;
+        	firstVisible = true;
+        }
+        // k == n is the closing segment back to the first vertex
+        for (int k = 1; k <= n; k++) {
+        	int i = k < n ? k : 0;
+        	double x = tx + polygon.getX(i) * scale, y = ty + polygon.getY(i) * scale;
+        	if (k < n - 1 && Math.floor(x) == Math.floor(lastX) && Math.floor(y) == Math.floor(lastY)) {
+        		continue; // same pixel as the last vertex kept
+        	}
+        	int code = outCode(x, y, minX, minY, maxX, maxY);
+        	if (k == n - 1) {
+        		lastVisible = code == 0; // the closing segment must not reset it
+        	}
+        	if ((code & lastCode) == 0) {
+        		if (!penDown) {
+        			path.moveTo(lastX, lastY);
+        			penDown = true;
+        		}
+        		path.lineTo(x, y);
+        		if (code == 0 && k < n - 1 && markers <= MAX_MARKERS) {
+        			if (markers * 2 == markerBuffer.length) {
+        				markerBuffer = Arrays.copyOf(markerBuffer, markerBuffer.length * 2);
+        			}
+        			markerBuffer[markers * 2] = (float) x;
+        			markerBuffer[markers * 2 + 1] = (float) y;
+        			markers++;
+        		}
+        	} else {
+        		penDown = false;
+        	}
+        	lastX = x;
+        	lastY = y;
+        	lastCode = code;
+        }
+
+        g2d.setColor(color);
+        g2d.draw(path);
+
+        if (markers > MAX_MARKERS) {
+        	return; // too dense to tell the vertices apart
+        }
+        int size = MARKER_SIZE;
+        g2d.setColor(Color.black);
+        for (int m = 0; m < markers; m++) {
+        	g2d.fillOval((int) markerBuffer[m * 2] - size/2, (int) markerBuffer[m * 2 + 1] - size/2, size, size);
+        }
+        if (lastVisible && n > 1) {
+        	g2d.setColor(Color.blue);
+        	g2d.fillOval((int) (tx + polygon.getX(n - 1) * scale) - size/2, (int) (ty + polygon.getY(n - 1) * scale) - size/2, size, size);
+        }
+        if (firstVisible) {
+        	g2d.setColor(Color.red);
+        	g2d.fillOval((int) (tx + polygon.getX(0) * scale) - size/2, (int) (ty + polygon.getY(0) * scale) - size/2, size, size);
         }
     }
+
+    /*
+     *  Cohen-Sutherland region code, 0 inside the rectangle.
+     */
+    private static int outCode(double x, double y, double minX, double minY, double maxX, double maxY) {
+    	int code = 0;
+    	if (x < minX) {
+    		code |= 1;
+    	} else if (x > maxX) {
+    		code |= 2;
+    	}
+    	if (y < minY) {
+    		code |= 4;
+    	} else if (y > maxY) {
+    		code |= 8;
+    	}
+    	return code;
+    }
     
 
     Point lastDragPos = new Point();
@@ -161,9 +467,11 @@ public class PathPanel extends JPanel implements MouseWheelListener, MouseListen
 	}
 
 	public void removeContour(int index) {
-		if(contours.size() > index) {
-			contours.remove( index );			
-		}
+		updateContours(list -> {
+			if(list.size() > index) {
+				list.remove( index );
+			}
+		});
 	}
 
 }
@@ -15,19 +15,27 @@ import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
 import java.awt.geom.Point2D;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.SwingWorker;
 
 public class PathVisualizer extends JFrame implements ActionListener, CoordListener {
     
@@ -38,14 +46,28 @@ public class PathVisualizer extends JFrame implements ActionListener, CoordListe
 	
 	protected PathPanel pathPanel;
 	protected JLabel coordLabelX, coordLabelY;
-	protected JButton loadButton, traceButton, clearConsoleButton;
-	protected JTextField toolRadiusTF, maxPathSegmentTF;
+	protected JButton loadButton, traceButton, cancelButton, saveGCodeButton, clearConsoleButton;
+	protected JProgressBar progressBar;
+	protected JTextField toolRadiusTF, maxPathSegmentTF, simplifyToleranceTF;
 	protected JCheckBox removeIntersectionsCB;
+	protected JComboBox<PolygonOffsetter.JoinType> joinTypeCB;
 	protected JTextArea textArea;
 	protected String defaultDir = "C:\\peter\\oc_gw\\design\\preformer\\engraver\\data";
 	
+	protected List<Contour2D> inputContours = new ArrayList<>();
+	protected List<Contour2D> toolPaths = new ArrayList<>();
+	protected ToolPathCache toolPathCache;
+	protected PipelineMonitor monitor = new PipelineMonitor();
+	
+	// every load or trace gets a new generation, results of older ones are dropped
+	private int generation = 0;
+	private CancellationToken runningCancel = null;
+	// the file of the running load, null if none is running
+	private File loadingFile = null;
+	
 	double toolRadius = .8;
 	double minPathSegmentLength = .5;
+	double simplifyTolerance = .01;
 	
 
 	public PathVisualizer () {
@@ -76,6 +98,13 @@ public class PathVisualizer extends JFrame implements ActionListener, CoordListe
 		commandPanel.add(radiusPanel);
 		removeIntersectionsCB = new JCheckBox("Remove Intersections");
 		commandPanel.add(removeIntersectionsCB);
+		JPanel joinTypePanel = new JPanel();
+		joinTypePanel.setLayout(new FlowLayout(FlowLayout.LEFT));
+		joinTypePanel.add(new JLabel("Corners:"));
+		joinTypeCB = new JComboBox<>(PolygonOffsetter.JoinType.values());
+		joinTypeCB.setSelectedItem(PolygonOffsetter.DEFAULT.getJoinType());
+		joinTypePanel.add(joinTypeCB);
+		commandPanel.add(joinTypePanel);
 		JPanel maxPathSegmentPanel = new JPanel();
 		maxPathSegmentPanel.setLayout(new FlowLayout(FlowLayout.LEFT));
 		maxPathSegmentPanel.add(new JLabel("Max Segment Length (mm):"));
@@ -84,11 +113,31 @@ public class PathVisualizer extends JFrame implements ActionListener, CoordListe
 		maxPathSegmentTF.addActionListener(this);
 		maxPathSegmentPanel.add(maxPathSegmentTF);
 		commandPanel.add(maxPathSegmentPanel);
+		JPanel simplifyPanel = new JPanel();
+		simplifyPanel.setLayout(new FlowLayout(FlowLayout.LEFT));
+		simplifyPanel.add(new JLabel("Simplify (mm):"));
+		simplifyToleranceTF = new JTextField(""+simplifyTolerance, 6);
+		simplifyToleranceTF.setHorizontalAlignment(JTextField.CENTER);
+		simplifyPanel.add(simplifyToleranceTF);
+		commandPanel.add(simplifyPanel);
 
 		traceButton = new JButton("Trace Toolpath");
 		traceButton.addActionListener(this);
 		commandPanel.add( traceButton );
 		
+		cancelButton = new JButton("Cancel");
+		cancelButton.addActionListener(this);
+		cancelButton.setEnabled(false);
+		commandPanel.add( cancelButton );
+		
+		progressBar = new JProgressBar(0, 100);
+		progressBar.setStringPainted(true);
+		commandPanel.add( progressBar );
+		
+		saveGCodeButton = new JButton("Save G-code");
+		saveGCodeButton.addActionListener(this);
+		commandPanel.add( saveGCodeButton );
+		
 		clearConsoleButton = new JButton("Clear Console");
 		clearConsoleButton.addActionListener(this);
 		commandPanel.add( clearConsoleButton );
@@ -105,6 +154,7 @@ public class PathVisualizer extends JFrame implements ActionListener, CoordListe
 		
 		pathPanel = new PathPanel();
 		pathPanel.addCoordListener(this);
+		pathPanel.setMonitor(monitor);
 		
         JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT,
         		pathPanel, scroll);
@@ -121,6 +171,9 @@ public class PathVisualizer extends JFrame implements ActionListener, CoordListe
     	if( System.getProperty("defaultDir") != null)
     		defaultDir = System.getProperty("defaultDir");
 
+    	String cacheDir = System.getProperty("toolPathCacheDir");
+    	toolPathCache = new ToolPathCache(ToolPathCache.DEFAULT_MAX_BYTES, cacheDir != null ? new File(cacheDir) : null);
+
 		fc = new JFileChooser();
 		if(defaultDir != null)
 			fc.setCurrentDirectory(new File(defaultDir));
@@ -144,20 +197,19 @@ public class PathVisualizer extends JFrame implements ActionListener, CoordListe
 		if (e.getSource() == loadButton) {
 			int returnVal = fc.showOpenDialog(this);
 			if (returnVal == JFileChooser.APPROVE_OPTION) {
-				File file = fc.getSelectedFile();
-		        List<Point2D> path = SVGPathReader.getInstance().readPathFromSVGFile(file);
-		        List<Point2D> optimizedPath = ToolPathCalculator.getInstance().removeRedundants(path);
-		        pathPanel.removeAllContours();
-		        pathPanel.addContour(new Contour2D(file.getName(), path, Color.green) );
-		        List<Point2D> toolPath = ToolPathCalculator.getInstance().calculateToolpath(path, Float.parseFloat(toolRadiusTF.getText()), removeIntersectionsCB.isSelected(), Float.parseFloat(maxPathSegmentTF.getText()));
-		        pathPanel.addContour(new Contour2D("Toolpath", toolPath, Color.blue) );
+				startWorker(fc.getSelectedFile());
+			}
+		} else if (e.getSource() == traceButton || e.getSource() == toolRadiusTF || e.getSource() == maxPathSegmentTF) {
+			startWorker(null);
+		} else if (e.getSource() == cancelButton) {
+			if (runningCancel != null) {
+				runningCancel.cancel();
+			}
+		} else if (e.getSource() == saveGCodeButton) {
+			int returnVal = fc.showSaveDialog(this);
+			if (returnVal == JFileChooser.APPROVE_OPTION) {
+				saveGCode(fc.getSelectedFile());
 			}
-		} else if (e.getSource() == traceButton) {
-			Contour2D initialContour = pathPanel.getContour( 0 );
-			pathPanel.removeContour( 1 );
-			
-	        List<Point2D> toolPath = ToolPathCalculator.getInstance().calculateToolpath(initialContour.path, Float.parseFloat(toolRadiusTF.getText()), removeIntersectionsCB.isSelected(), Float.parseFloat(maxPathSegmentTF.getText()));
-	        pathPanel.addContour(new Contour2D("Toolpath", toolPath, Color.blue) );
 		} else if (e.getSource() == clearConsoleButton) {
 			textArea.setText(null);
 		}
@@ -168,6 +220,189 @@ public class PathVisualizer extends JFrame implements ActionListener, CoordListe
 
 
 
+	/*
+	 *  Loads the file, if not null, and traces the toolpaths in the
+	 *  background. A calculation still running is cancelled, its results
+	 *  would be stale anyway. A trace started while a load is running loads
+	 *  that file again with the new settings, the contours shown are still
+	 *  the previous file's.
+	 */
+	private void startWorker(File file) {
+		if (file == null) {
+			file = loadingFile;
+		}
+		ToolPathConfig config;
+		double tolerance = 0;
+		try {
+			config = createConfig();
+			if (file != null) {
+				tolerance = simplifyTolerance();
+			}
+		} catch (IllegalArgumentException e) {
+			System.out.println("Invalid setting: " + e.getMessage());
+			return;
+		}
+		if (runningCancel != null) {
+			runningCancel.cancel();
+		}
+		runningCancel = new CancellationToken();
+		loadingFile = file;
+		// a cancelled worker may still record, so every generation measures into its own monitor
+		monitor = new PipelineMonitor();
+		pathPanel.setMonitor(monitor);
+		progressBar.setValue(0);
+		cancelButton.setEnabled(true);
+		new ToolPathWorker(++generation, runningCancel, monitor, file, file == null ? new ArrayList<>(inputContours) : null, config, tolerance).execute();
+	}
+
+	private class ToolPathWorker extends SwingWorker<List<ToolPathResult>, Void> {
+		private final int workerGeneration;
+		private final CancellationToken cancel;
+		private final PipelineMonitor monitor;
+		private final File file;
+		private final ToolPathConfig config;
+		private final double tolerance;
+		private List<Contour2D> contours;
+		private List<String> readWarnings = List.of();
+		private String loadMessage;
+
+		ToolPathWorker(int workerGeneration, CancellationToken cancel, PipelineMonitor monitor, File file, List<Contour2D> contours, ToolPathConfig config, double tolerance) {
+			this.workerGeneration = workerGeneration;
+			this.cancel = cancel;
+			this.monitor = monitor;
+			this.file = file;
+			this.contours = contours;
+			this.config = config;
+			this.tolerance = tolerance;
+			addPropertyChangeListener(event -> {
+				if ("progress".equals(event.getPropertyName()) && workerGeneration == generation) {
+					progressBar.setValue((Integer) event.getNewValue());
+				}
+			});
+		}
+
+		@Override
+		protected List<ToolPathResult> doInBackground() throws IOException {
+			if (file != null) {
+				PipelineMonitor.Span span = monitor.start(PipelineMonitor.Stage.READ, file.getName(), 0);
+				contours = new ArrayList<>();
+				readWarnings = SVGPathReader.getInstance().readContoursFromSVGFile(file, contours::add);
+				int pointsBefore = 0, pointsAfter = 0;
+				for (Contour2D contour : contours) {
+					pointsBefore += contour.path.size();
+				}
+				span.stop(pointsBefore);
+				for (Contour2D contour : contours) {
+					cancel.checkCancelled();
+					span = monitor.start(PipelineMonitor.Stage.SIMPLIFY, contour.name, contour.path.size());
+					contour.path = ToolPathCalculator.getInstance().removeRedundants(contour.path, tolerance);
+					span.stop(contour.path.size());
+					pointsAfter += contour.path.size();
+				}
+				loadMessage = file.getName() + ": " + contours.size() + " contours, " + pointsBefore + " points simplified to " + pointsAfter;
+			}
+			int total = Math.max(1, contours.size());
+			AtomicInteger done = new AtomicInteger();
+			return toolPathCache.calculateToolpaths(contours, config, ForkJoinPool.commonPool(), monitor, cancel,
+					result -> setProgress(done.incrementAndGet() * 100 / total));
+		}
+
+		@Override
+		protected void done() {
+			if (workerGeneration != generation) {
+				return; // superseded by a later load or trace
+			}
+			runningCancel = null;
+			loadingFile = null;
+			cancelButton.setEnabled(false);
+			List<ToolPathResult> results;
+			try {
+				results = get();
+			} catch (InterruptedException | CancellationException e) {
+				System.out.println("Calculation cancelled");
+				return;
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof CancellationException) {
+					System.out.println("Calculation cancelled");
+				} else if (e.getCause() instanceof IOException) {
+					System.out.println(e.getCause().getMessage());
+				} else {
+					e.getCause().printStackTrace();
+				}
+				return;
+			}
+			for (String warning : readWarnings) {
+				System.out.println(warning);
+			}
+			for (String warning : toolPathCache.takeWarnings()) {
+				System.out.println(warning);
+			}
+			if (loadMessage != null) {
+				System.out.println(loadMessage);
+			}
+			progressBar.setValue(100);
+			showToolpaths(contours, results);
+		}
+	}
+
+	private void showToolpaths(List<Contour2D> contours, List<ToolPathResult> results) {
+		inputContours = contours;
+		toolPaths = new ArrayList<>();
+		List<Contour2D> shown = new ArrayList<>();
+		for (Contour2D contour : inputContours) {
+			// the contours may still be in the panel's snapshot, which must not change
+			shown.add(new Contour2D(contour.name, contour.path, Color.green));
+		}
+		for (ToolPathResult result : results) {
+			if (result.isSuccess()) {
+				Contour2D toolPath = new Contour2D("Toolpath " + result.contour.name, result.toolPath, Color.blue);
+				toolPaths.add(toolPath);
+				shown.add(toolPath);
+			} else {
+				System.out.println("Toolpath of " + result.contour.name + " failed: " + result.error);
+			}
+		}
+		pathPanel.setContours(shown);
+		monitor.printSummary(System.out);
+	}
+
+	private void saveGCode(File file) {
+		int points = 0;
+		for (Contour2D toolPath : toolPaths) {
+			points += toolPath.path.size();
+		}
+		PipelineMonitor.Span span = monitor.start(PipelineMonitor.Stage.WRITE, file.getName(), points);
+		try (GCodeWriter writer = GCodeWriter.open(file.toPath())) {
+			writer.writeHeader();
+			for (Contour2D toolPath : toolPaths) {
+				writer.writeContour(toolPath);
+			}
+			writer.writeFooter();
+			span.stop(points);
+			System.out.println(file.getName() + ": " + toolPaths.size() + " toolpaths written");
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private double simplifyTolerance() {
+		double tolerance = Double.parseDouble(simplifyToleranceTF.getText());
+		if (!(tolerance >= 0) || Double.isInfinite(tolerance)) {
+			throw new IllegalArgumentException("simplify tolerance must be a number >= 0");
+		}
+		return tolerance;
+	}
+
+	private ToolPathConfig createConfig() {
+		PolygonOffsetter.JoinType joinType = (PolygonOffsetter.JoinType) joinTypeCB.getSelectedItem();
+		PolygonOffsetter offsetter = new PolygonOffsetter(joinType, PolygonOffsetter.DEFAULT.getMiterLimit(), PolygonOffsetter.DEFAULT.getArcTolerance());
+		return ToolPathConfig.DEFAULT
+				.withToolRadius(Float.parseFloat(toolRadiusTF.getText()))
+				.withRemoveIntersections(removeIntersectionsCB.isSelected())
+				.withMaxPathSegmentLength(Float.parseFloat(maxPathSegmentTF.getText()))
+				.withOffsetter(offsetter);
+	}
+
 	@Override
 	public void coordsUpdated(Point2D p) {
 		coordLabelX.setText(String.format("%.3f", p.getX()));
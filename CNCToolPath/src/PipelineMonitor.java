@@ -0,0 +1,218 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/*
+ *  Records how long each stage of the toolpath pipeline takes per contour,
+ *  how many points go in and come out and how many bytes the stage allocated.
+ *
+ *  A stage is measured with
+ *
+ *      PipelineMonitor.Span span = monitor.start(Stage.OFFSET, name, pointsIn);
+ *      ...
+ *      span.stop(pointsOut);
+ *
+ *  Allocations are taken from the per thread counter of the HotSpot
+ *  ThreadMXBean, so a span must be stopped on the thread that started it. On
+ *  JVMs without that counter the allocated bytes stay 0.
+ *
+ *  Totals per stage are kept for every measurement, the single measurements
+ *  only for the most recent maxMeasurements. The slowest measurement of each
+ *  stage is always kept, it usually names the contour that exploded.
+ *
+ *  NONE ignores everything at no cost. All methods are thread safe.
+ */
+public class PipelineMonitor {
+
+	public enum Stage { READ, SIMPLIFY, OFFSET, SUBDIVIDE, REMOVE_INTERSECTIONS, REMOVE_DUPLICATES, WRITE, RENDER }
+
+	public static final PipelineMonitor NONE = new PipelineMonitor(false, 0);
+	public static final int DEFAULT_MAX_MEASUREMENTS = 10000;
+
+	private static final com.sun.management.ThreadMXBean THREAD_BEAN = threadBean();
+	private static final Span NO_SPAN = new Span(null, null, null, 0);
+
+	/*
+	 *  One stage run for one contour, time in nanoseconds.
+	 */
+	public static class Measurement {
+		public final Stage stage;
+		public final String contour;
+		public final long nanos;
+		public final int pointsIn;
+		public final int pointsOut;
+		public final long allocatedBytes;
+
+		Measurement(Stage stage, String contour, long nanos, int pointsIn, int pointsOut, long allocatedBytes) {
+			this.stage = stage;
+			this.contour = contour;
+			this.nanos = nanos;
+			this.pointsIn = pointsIn;
+			this.pointsOut = pointsOut;
+			this.allocatedBytes = allocatedBytes;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "%s %s: %.3f ms, %d -> %d points, %d bytes", stage, contour, nanos / 1e6, pointsIn, pointsOut,
+					allocatedBytes);
+		}
+	}
+
+	/*
+	 *  Sums of all measurements of one stage.
+	 */
+	public static class StageTotals {
+		public final Stage stage;
+		public final long count;
+		public final long nanos;
+		public final long pointsIn;
+		public final long pointsOut;
+		public final long allocatedBytes;
+		public final Measurement slowest;
+
+		StageTotals(Stage stage, long count, long nanos, long pointsIn, long pointsOut, long allocatedBytes, Measurement slowest) {
+			this.stage = stage;
+			this.count = count;
+			this.nanos = nanos;
+			this.pointsIn = pointsIn;
+			this.pointsOut = pointsOut;
+			this.allocatedBytes = allocatedBytes;
+			this.slowest = slowest;
+		}
+	}
+
+	/*
+	 *  A running measurement.
+	 */
+	public static class Span {
+		private final PipelineMonitor monitor;
+		private final Stage stage;
+		private final String contour;
+		private final int pointsIn;
+		private final long startNanos;
+		private final long startBytes;
+
+		Span(PipelineMonitor monitor, Stage stage, String contour, int pointsIn) {
+			this.monitor = monitor;
+			this.stage = stage;
+			this.contour = contour;
+			this.pointsIn = pointsIn;
+			this.startBytes = monitor != null ? monitor.allocatedBytes() : 0;
+			this.startNanos = monitor != null ? System.nanoTime() : 0;
+		}
+
+		public void stop(int pointsOut) {
+			if (monitor == null) {
+				return;
+			}
+			long nanos = System.nanoTime() - startNanos;
+			long bytes = monitor.allocatedBytes() - startBytes;
+			monitor.record(new Measurement(stage, contour, nanos, pointsIn, pointsOut, Math.max(0, bytes)));
+		}
+	}
+
+	private final boolean enabled;
+	private final int maxMeasurements;
+	private final ArrayDeque<Measurement> measurements = new ArrayDeque<>();
+	private final long[] count = new long[Stage.values().length];
+	private final long[] nanos = new long[Stage.values().length];
+	private final long[] pointsIn = new long[Stage.values().length];
+	private final long[] pointsOut = new long[Stage.values().length];
+	private final long[] allocated = new long[Stage.values().length];
+	private final Measurement[] slowest = new Measurement[Stage.values().length];
+
+	public PipelineMonitor() {
+		this(true, DEFAULT_MAX_MEASUREMENTS);
+	}
+
+	public PipelineMonitor(boolean enabled, int maxMeasurements) {
+		if (maxMeasurements < 0) {
+			throw new IllegalArgumentException("maxMeasurements must not be negative");
+		}
+		this.enabled = enabled;
+		this.maxMeasurements = maxMeasurements;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public Span start(Stage stage, String contour, int pointsIn) {
+		return enabled ? new Span(this, stage, contour, pointsIn) : NO_SPAN;
+	}
+
+	public synchronized void record(Measurement m) {
+		if (!enabled) {
+			return;
+		}
+		int s = m.stage.ordinal();
+		count[s]++;
+		nanos[s] += m.nanos;
+		pointsIn[s] += m.pointsIn;
+		pointsOut[s] += m.pointsOut;
+		allocated[s] += m.allocatedBytes;
+		if (slowest[s] == null || m.nanos > slowest[s].nanos) {
+			slowest[s] = m;
+		}
+		if (maxMeasurements > 0) {
+			if (measurements.size() == maxMeasurements) {
+				measurements.removeFirst();
+			}
+			measurements.addLast(m);
+		}
+	}
+
+	public synchronized List<Measurement> getMeasurements() {
+		return new ArrayList<>(measurements);
+	}
+
+	public synchronized StageTotals getTotals(Stage stage) {
+		int s = stage.ordinal();
+		return new StageTotals(stage, count[s], nanos[s], pointsIn[s], pointsOut[s], allocated[s], slowest[s]);
+	}
+
+	public synchronized void reset() {
+		measurements.clear();
+		for (int s = 0; s < count.length; s++) {
+			count[s] = nanos[s] = pointsIn[s] = pointsOut[s] = allocated[s] = 0;
+			slowest[s] = null;
+		}
+	}
+
+	/*
+	 *  One line per stage that was measured at all.
+	 */
+	public void printSummary(PrintStream out) {
+		out.println(String.format(Locale.ROOT, "%-20s %8s %10s %12s %12s %10s  %s",
+				"Stage", "Count", "Total ms", "Points in", "Points out", "Alloc MB", "Slowest"));
+		for (Stage stage : Stage.values()) {
+			StageTotals t = getTotals(stage);
+			if (t.count == 0) {
+				continue;
+			}
+			out.println(String.format(Locale.ROOT, "%-20s %8d %10.1f %12d %12d %10.1f  %.1f ms %s",
+					stage, t.count, t.nanos / 1e6, t.pointsIn, t.pointsOut, t.allocatedBytes / 1048576.0,
+					t.slowest.nanos / 1e6, t.slowest.contour));
+		}
+	}
+
+	private long allocatedBytes() {
+		return THREAD_BEAN != null ? THREAD_BEAN.getCurrentThreadAllocatedBytes() : 0;
+	}
+
+	private static com.sun.management.ThreadMXBean threadBean() {
+		try {
+			if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean && bean.isThreadAllocatedMemorySupported()) {
+				bean.setThreadAllocatedMemoryEnabled(true);
+				return bean;
+			}
+		} catch (UnsupportedOperationException | SecurityException e) {
+			// no allocation counter
+		}
+		return null;
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ *  Uniform grid over a set of points for "is there a point within epsilon"
+ *  queries.
+ *
+ *  The cells are at least epsilon wide, so a query only has to look at the
+ *  cell of the query point and its direct neighbours. Like SegmentGrid the
+ *  cells are one counting sorted index array, built in linear time.
+ *
+ *  The grid keeps a reference to the points, which must not change while the
+ *  grid is used. Queries may run concurrently.
+ */
+public class PointGrid {
+
+	private final Polyline2D points;
+	private final double epsilon;
+	private final double minX, minY;
+	private final double cellSize;
+	private final int columns, rows;
+	private final int[] cellStart;
+	private final int[] cellPoints;
+
+	public PointGrid(Polyline2D points, double epsilon) {
+		if (!(epsilon > 0)) {
+			throw new IllegalArgumentException("epsilon must be greater than 0");
+		}
+		this.points = points;
+		this.epsilon = epsilon;
+		int n = points.size();
+
+		double x0 = Double.MAX_VALUE, y0 = Double.MAX_VALUE, x1 = -Double.MAX_VALUE, y1 = -Double.MAX_VALUE;
+		for (int i = 0; i < n; i++) {
+			x0 = Math.min(x0, points.getX(i));
+			y0 = Math.min(y0, points.getY(i));
+			x1 = Math.max(x1, points.getX(i));
+			y1 = Math.max(y1, points.getY(i));
+		}
+		if (n == 0) {
+			x0 = y0 = x1 = y1 = 0;
+		}
+		minX = x0;
+		minY = y0;
+
+		// about one cell per point, but never smaller than epsilon
+		double width = x1 - x0, height = y1 - y0;
+		double size = Math.max(epsilon, Math.sqrt(width * height / Math.max(1, n)));
+		size = Math.max(size, Math.max(width, height) / Math.max(1, n));
+		cellSize = size;
+		columns = (int) (width / size) + 1;
+		rows = (int) (height / size) + 1;
+
+		cellStart = new int[columns * rows + 1];
+		for (int i = 0; i < n; i++) {
+			cellStart[cell(points.getX(i), points.getY(i)) + 1]++;
+		}
+		for (int c = 0; c < columns * rows; c++) {
+			cellStart[c + 1] += cellStart[c];
+		}
+		cellPoints = new int[n];
+		int[] fill = new int[columns * rows];
+		System.arraycopy(cellStart, 0, fill, 0, fill.length);
+		for (int i = 0; i < n; i++) {
+			cellPoints[fill[cell(points.getX(i), points.getY(i))]++] = i;
+		}
+	}
+
+	/*
+	 *  Whether any point is closer than epsilon to (x, y).
+	 */
+	public boolean contains(double x, double y) {
+		int cx = (int) Math.floor((x - minX) / cellSize);
+		int cy = (int) Math.floor((y - minY) / cellSize);
+		double epsilonSq = epsilon * epsilon;
+		for (int gy = Math.max(0, cy - 1); gy <= Math.min(rows - 1, cy + 1); gy++) {
+			for (int gx = Math.max(0, cx - 1); gx <= Math.min(columns - 1, cx + 1); gx++) {
+				int c = gy * columns + gx;
+				for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+					double dx = points.getX(cellPoints[k]) - x, dy = points.getY(cellPoints[k]) - y;
+					if (dx * dx + dy * dy < epsilonSq) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	private int cell(double x, double y) {
+		int cx = Math.min(columns - 1, (int) ((x - minX) / cellSize));
+		int cy = Math.min(rows - 1, (int) ((y - minY) / cellSize));
+		return cy * columns + cx;
+	}
+}
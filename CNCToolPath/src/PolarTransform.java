@@ -0,0 +1,172 @@
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/*
+ *  Converts cartesian paths into polar coordinates for the rotary engraver:
+ *  the radius is the distance from the origin, the angle is measured in
+ *  degrees and unwrapped, i.e. it continues past +-180 instead of jumping so
+ *  the rotary axis never turns back a full revolution.
+ *
+ *  Results are either written to a PolarConsumer point by point or returned
+ *  as one interleaved array [r0, a0, r1, a1, ...].
+ *
+ *  With an angular step > 0 the path is resampled: besides its first and last
+ *  point only the points where the path crosses a multiple of the step and
+ *  the ends of purely radial segments are produced, which gives the rotary
+ *  axis a constant angular increment.
+ *
+ *  strictMath selects StrictMath.atan2, reproducible to the last bit on all
+ *  platforms. Otherwise a polynomial approximation with an error below 2e-8
+ *  radians, about 1.2e-6 degrees, is used, which is considerably faster.
+ *
+ *  Instances are immutable and can be shared between threads.
+ */
+public class PolarTransform {
+
+	public interface PolarConsumer {
+		void accept(double radius, double angle);
+	}
+
+	public static final PolarTransform DEFAULT = new PolarTransform(true, 0);
+
+	private static final double TO_DEGREES = 180.0 / Math.PI;
+	// segments turning less than this (degrees) are treated as radial
+	private static final double RADIAL_EPSILON = 1e-9;
+
+	private final boolean strictMath;
+	private final double angularStep;
+
+	public PolarTransform(boolean strictMath, double angularStep) {
+		if (!(angularStep >= 0) || Double.isInfinite(angularStep)) {
+			throw new IllegalArgumentException("angularStep must be 0 or greater");
+		}
+		this.strictMath = strictMath;
+		this.angularStep = angularStep;
+	}
+
+	public boolean isStrictMath() {
+		return strictMath;
+	}
+
+	public double getAngularStep() {
+		return angularStep;
+	}
+
+	/*
+	 *  Returns the interleaved radius/angle pairs of path. A closed path ends
+	 *  with its first point again, at the unwrapped angle it is reached with.
+	 */
+	public double[] transform(Polyline2D path, boolean closed) {
+		int estimate = path.size() + (closed ? 1 : 0);
+		double[][] out = { new double[Math.max(2, estimate * 2)] };
+		int[] count = { 0 };
+		transform(path, closed, (radius, angle) -> {
+			if (count[0] + 2 > out[0].length) {
+				double[] grown = new double[(out[0].length + (out[0].length >> 2) + 1) * 2];
+				System.arraycopy(out[0], 0, grown, 0, count[0]);
+				out[0] = grown;
+			}
+			out[0][count[0]++] = radius;
+			out[0][count[0]++] = angle;
+		});
+		if (count[0] == out[0].length) {
+			return out[0];
+		}
+		double[] ret = new double[count[0]];
+		System.arraycopy(out[0], 0, ret, 0, count[0]);
+		return ret;
+	}
+
+	public void transform(Polyline2D path, boolean closed, PolarConsumer consumer) {
+		int n = path.size();
+		if (n == 0) {
+			return;
+		}
+		int end = closed ? n + 1 : n;
+		double lastX = path.getX(0), lastY = path.getY(0);
+		double lastAngle = atan2(lastY, lastX);
+		consumer.accept(Math.sqrt(lastX * lastX + lastY * lastY), lastAngle);
+		boolean lastEmitted = true;
+
+		for (int i = 1; i < end; i++) {
+			int k = i < n ? i : 0;
+			double x = path.getX(k), y = path.getY(k);
+			double raw = atan2(y, x);
+			double angle = raw + 360 * Math.rint((lastAngle - raw) / 360);
+			if (angularStep > 0 && Math.abs(angle - lastAngle) > RADIAL_EPSILON) {
+				lastEmitted = emitCrossings(lastX, lastY, lastAngle, x, y, angle, consumer);
+			} else {
+				consumer.accept(Math.sqrt(x * x + y * y), angle);
+				lastEmitted = true;
+			}
+			lastX = x;
+			lastY = y;
+			lastAngle = angle;
+		}
+		if (!lastEmitted) {
+			consumer.accept(Math.sqrt(lastX * lastX + lastY * lastY), lastAngle);
+		}
+	}
+
+	/*
+	 *  Transforms all paths in parallel, the result list is in input order.
+	 */
+	public List<double[]> transformAll(List<Polyline2D> paths, boolean closed, ForkJoinPool pool) {
+		return pool.submit(() -> paths.parallelStream().map(path -> transform(path, closed)).toList()).join();
+	}
+
+	/*
+	 *  Produces the points where the segment crosses a multiple of the angular
+	 *  step between its start angle (exclusive) and end angle (inclusive).
+	 *  Returns whether the end point itself was produced.
+	 */
+	private boolean emitCrossings(double x0, double y0, double a0, double x1, double y1, double a1, PolarConsumer consumer) {
+		boolean up = a1 > a0;
+		long first = up ? (long) Math.floor(a0 / angularStep) + 1 : (long) Math.ceil(a0 / angularStep) - 1;
+		long last = up ? (long) Math.floor(a1 / angularStep) : (long) Math.ceil(a1 / angularStep);
+		long step = up ? 1 : -1;
+		for (long m = first; up ? m <= last : m >= last; m += step) {
+			double angle = m * angularStep;
+			double rad = angle / TO_DEGREES;
+			double cos = Math.cos(rad), sin = Math.sin(rad);
+			// side of the ray for both ends, the crossing is where it changes sign
+			double s0 = cos * y0 - sin * x0;
+			double s1 = cos * y1 - sin * x1;
+			double t = s0 == s1 ? 0 : s0 / (s0 - s1);
+			double x = x0 + t * (x1 - x0), y = y0 + t * (y1 - y0);
+			consumer.accept(Math.sqrt(x * x + y * y), angle);
+		}
+		return first != last + step && last * angularStep == a1;
+	}
+
+	private double atan2(double y, double x) {
+		if (strictMath) {
+			return StrictMath.atan2(y, x) * TO_DEGREES;
+		}
+		return fastAtan2(y, x) * TO_DEGREES;
+	}
+
+	/*
+	 *  atan2 from the series of Abramowitz/Stegun 4.4.49 on [0, 1], error
+	 *  below 2e-8 radians (1.2e-6 degrees) in every quadrant. Like Math.atan2
+	 *  the sign follows y, -0 included.
+	 */
+	static double fastAtan2(double y, double x) {
+		double ax = Math.abs(x), ay = Math.abs(y);
+		if (ax == 0 && ay == 0) {
+			return 0;
+		}
+		boolean swap = ay > ax;
+		double z = swap ? ax / ay : ay / ax;
+		double z2 = z * z;
+		double a = z * (1 + z2 * (-0.3333314528 + z2 * (0.1999355085 + z2 * (-0.1420889944 + z2 * (0.1065626393
+				+ z2 * (-0.0752896400 + z2 * (0.0429096138 + z2 * (-0.0161657367 + z2 * 0.0028662257))))))));
+		if (swap) {
+			a = Math.PI / 2 - a;
+		}
+		if (x < 0) {
+			a = Math.PI - a;
+		}
+		return Math.copySign(a, y);
+	}
+}
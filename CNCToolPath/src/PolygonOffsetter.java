@@ -0,0 +1,220 @@
+/*
+ *  Offsets a closed polygon by a fixed distance.
+ *
+ *  Every edge is moved along its normal, the gaps at convex corners are closed
+ *  according to the JoinType:
+ *
+ *  MITER  - the offset edges are extended until they meet, but never further
+ *           than miterLimit * offset from the corner. Longer miters are cut
+ *           off square at that distance.
+ *  ROUND  - an arc around the corner, subdivided so that no chord deviates
+ *           more than arcTolerance from the true arc.
+ *  SQUARE - the corner is cut off square at the offset distance.
+ *
+ *  Corners where the miter stays within arcTolerance of the offset distance
+ *  always get a single miter point, so flat corners do not multiply.
+ *
+ *  Coincident points are removed before offsetting, collinear points produce
+ *  a single offset point. The work is linear in the number of vertices.
+ *
+ *  Instances are immutable.
+ */
+public class PolygonOffsetter {
+
+	public enum JoinType { MITER, ROUND, SQUARE }
+
+	public static final PolygonOffsetter DEFAULT = new PolygonOffsetter(JoinType.MITER, 2.0, 0.01);
+
+	private static final double COINCIDENT_EPSILON = 1e-9;
+	private static final double COLLINEAR_EPSILON = 1e-9;
+
+	private final JoinType joinType;
+	private final double miterLimit;
+	private final double arcTolerance;
+
+	public PolygonOffsetter(JoinType joinType, double miterLimit, double arcTolerance) {
+		if (joinType == null) {
+			throw new IllegalArgumentException("joinType must not be null");
+		}
+		if (!(miterLimit >= 1)) {
+			throw new IllegalArgumentException("miterLimit must be at least 1");
+		}
+		if (!(arcTolerance > 0)) {
+			throw new IllegalArgumentException("arcTolerance must be greater than 0");
+		}
+		this.joinType = joinType;
+		this.miterLimit = miterLimit;
+		this.arcTolerance = arcTolerance;
+	}
+
+	public JoinType getJoinType() {
+		return joinType;
+	}
+
+	public double getMiterLimit() {
+		return miterLimit;
+	}
+
+	public double getArcTolerance() {
+		return arcTolerance;
+	}
+
+	/*
+	 *  Returns the polygon moved by offset along the right hand normal of its
+	 *  edges. Depending on the orientation of the polygon a positive offset
+	 *  grows or shrinks it. Polygons with less than 3 distinct points result in
+	 *  an empty polyline.
+	 */
+	public Polyline2D offset(Polyline2D polygon, double offset) {
+		Polyline2D clean = removeCoincidentPoints(polygon);
+		int n = clean.size();
+		if (n < 3) {
+			return new Polyline2D(0);
+		}
+		if (offset == 0) {
+			return clean;
+		}
+
+		// unit direction of every edge i -> i+1
+		double[] dirs = new double[n * 2];
+		for (int i = 0; i < n; i++) {
+			int j = (i + 1) % n;
+			double dx = clean.getX(j) - clean.getX(i);
+			double dy = clean.getY(j) - clean.getY(i);
+			double len = Math.sqrt(dx * dx + dy * dy);
+			dirs[i * 2] = dx / len;
+			dirs[i * 2 + 1] = dy / len;
+		}
+
+		double delta = Math.abs(offset);
+		double stepAngle = delta > arcTolerance ? 2 * Math.acos(1 - arcTolerance / delta) : Math.PI / 2;
+		Polyline2D ret = new Polyline2D(n + n / 2);
+
+		for (int i = 0; i < n; i++) {
+			int prev = (i + n - 1) % n;
+			double px = clean.getX(i), py = clean.getY(i);
+			double d1x = dirs[prev * 2], d1y = dirs[prev * 2 + 1];
+			double d2x = dirs[i * 2], d2y = dirs[i * 2 + 1];
+
+			// offset vectors of the incoming and outgoing edge
+			double n1x = d1y * offset, n1y = -d1x * offset;
+			double n2x = d2y * offset, n2y = -d2x * offset;
+
+			double cross = d1x * d2y - d1y * d2x;
+			double dot = d1x * d2x + d1y * d2y;
+
+			if (Math.abs(cross) < COLLINEAR_EPSILON && dot > 0) {
+				// straight continuation, both offset points coincide
+				ret.add(px + n1x, py + n1y);
+			} else if (Math.abs(cross) >= COLLINEAR_EPSILON && cross * offset < 0) {
+				addInnerJoin(ret, px, py, n1x, n1y, n2x, n2y, dot);
+			} else {
+				switch (joinType) {
+				case ROUND:
+					addRoundJoin(ret, px, py, n1x, n1y, n2x, n2y, cross, dot, offset, stepAngle);
+					break;
+				case SQUARE:
+					addClippedJoin(ret, px, py, d1x, d1y, d2x, d2y, n1x, n1y, n2x, n2y, dot, delta);
+					break;
+				default:
+					addClippedJoin(ret, px, py, d1x, d1y, d2x, d2y, n1x, n1y, n2x, n2y, dot, miterLimit * delta);
+					break;
+				}
+			}
+		}
+
+		return ret;
+	}
+
+	/*
+	 *  The offset edges of a concave corner overlap, they are joined at their
+	 *  intersection. For very sharp corners the intersection is far away, then
+	 *  both edge ends are kept and the resulting loop is left to the
+	 *  intersection removal.
+	 */
+	private void addInnerJoin(Polyline2D out, double px, double py, double n1x, double n1y, double n2x, double n2y, double dot) {
+		double q = 1 + dot;
+		if (q > 2 / (miterLimit * miterLimit)) {
+			out.add(px + (n1x + n2x) / q, py + (n1y + n2y) / q);
+		} else {
+			out.add(px + n1x, py + n1y);
+			out.add(px + n2x, py + n2y);
+		}
+	}
+
+	/*
+	 *  Miter join that is cut off perpendicular to the corner bisector once the
+	 *  miter is longer than limit.
+	 */
+	private void addClippedJoin(Polyline2D out, double px, double py, double d1x, double d1y, double d2x, double d2y,
+			double n1x, double n1y, double n2x, double n2y, double dot, double limit) {
+		double q = 1 + dot;
+		double delta = Math.sqrt(n1x * n1x + n1y * n1y);
+		double miter = q > COLLINEAR_EPSILON ? delta * Math.sqrt(2 / q) : Double.MAX_VALUE;
+		if (miter <= limit || miter - delta <= arcTolerance) {
+			out.add(px + (n1x + n2x) / q, py + (n1y + n2y) / q);
+			return;
+		}
+
+		// unit bisector pointing away from the corner; for a reversal the
+		// incoming direction
+		double mx = n1x + n2x, my = n1y + n2y;
+		double mlen = Math.sqrt(mx * mx + my * my);
+		if (mlen < COLLINEAR_EPSILON * delta) {
+			mx = d1x;
+			my = d1y;
+		} else {
+			mx /= mlen;
+			my /= mlen;
+		}
+
+		// walk along each offset edge until the clip line is reached
+		double t1 = (limit - (n1x * mx + n1y * my)) / (d1x * mx + d1y * my);
+		double t2 = (limit - (n2x * mx + n2y * my)) / (d2x * mx + d2y * my);
+		out.add(px + n1x + t1 * d1x, py + n1y + t1 * d1y);
+		out.add(px + n2x + t2 * d2x, py + n2y + t2 * d2y);
+	}
+
+	private void addRoundJoin(Polyline2D out, double px, double py, double n1x, double n1y, double n2x, double n2y, double cross, double dot,
+			double offset, double stepAngle) {
+		double angle = Math.abs(cross) < COLLINEAR_EPSILON ? Math.copySign(Math.PI, offset) : Math.atan2(cross, dot);
+		if (Math.abs(angle) <= stepAngle) {
+			// the miter point is within arcTolerance of the arc
+			double q = 1 + dot;
+			out.add(px + (n1x + n2x) / q, py + (n1y + n2y) / q);
+			return;
+		}
+		int steps = Math.max(1, (int) Math.ceil(Math.abs(angle) / stepAngle));
+		double sin = Math.sin(angle / steps);
+		double cos = Math.cos(angle / steps);
+
+		double vx = n1x, vy = n1y;
+		out.add(px + vx, py + vy);
+		for (int k = 0; k < steps; k++) {
+			double rx = vx * cos - vy * sin;
+			vy = vx * sin + vy * cos;
+			vx = rx;
+			out.add(px + vx, py + vy);
+		}
+	}
+
+	private static Polyline2D removeCoincidentPoints(Polyline2D polygon) {
+		Polyline2D ret = new Polyline2D(polygon.size());
+		for (int i = 0; i < polygon.size(); i++) {
+			double x = polygon.getX(i), y = polygon.getY(i);
+			if (ret.isEmpty() || Math.abs(x - ret.getLastX()) > COINCIDENT_EPSILON || Math.abs(y - ret.getLastY()) > COINCIDENT_EPSILON) {
+				ret.add(x, y);
+			}
+		}
+		// the closing point may repeat the first one
+		int end = ret.size();
+		while (end > 1 && Math.abs(ret.getX(0) - ret.getX(end - 1)) <= COINCIDENT_EPSILON
+				&& Math.abs(ret.getY(0) - ret.getY(end - 1)) <= COINCIDENT_EPSILON) {
+			end--;
+		}
+		if (end < ret.size()) {
+			ret = ret.subPath(0, end).copy();
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,238 @@
+import java.awt.geom.Point2D;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/*
+ *  A sequence of 2D points stored as interleaved x/y values in a single
+ *  double array.
+ *
+ *  The array grows on demand when points are added. subPath() returns a view
+ *  that shares the backing array with its parent, so slicing does not copy
+ *  any coordinates. Views can be read and modified with set(), but not
+ *  resized.
+ *
+ *  asList() and of() adapt to and from the List<Point2D> representation
+ *  that is used by the older API.
+ */
+public class Polyline2D {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private double[] coords;
+	private final int offset;
+	private int size;
+	private final boolean view;
+
+	public Polyline2D() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public Polyline2D(int capacity) {
+		this.coords = new double[Math.max(capacity, 1) * 2];
+		this.offset = 0;
+		this.size = 0;
+		this.view = false;
+	}
+
+	private Polyline2D(double[] coords, int offset, int size) {
+		this.coords = coords;
+		this.offset = offset;
+		this.size = size;
+		this.view = true;
+	}
+
+	/*
+	 *  Wraps an interleaved x/y array without copying it. The array must not
+	 *  be modified by the caller afterwards.
+	 */
+	public static Polyline2D wrap(double[] coords, int size) {
+		if (coords.length < size * 2) {
+			throw new IllegalArgumentException("coordinate array too short for " + size + " points");
+		}
+		Polyline2D ret = new Polyline2D(0);
+		ret.coords = coords;
+		ret.size = size;
+		return ret;
+	}
+
+	public static Polyline2D of(List<Point2D> points) {
+		if (points instanceof PointListView v) {
+			return v.polyline;
+		}
+		Polyline2D ret = new Polyline2D(points.size());
+		for (Point2D p : points) {
+			ret.add(p.getX(), p.getY());
+		}
+		return ret;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public double getX(int index) {
+		checkIndex(index);
+		return coords[offset + index * 2];
+	}
+
+	public double getY(int index) {
+		checkIndex(index);
+		return coords[offset + index * 2 + 1];
+	}
+
+	public Point2D get(int index) {
+		return new Point2D.Double(getX(index), getY(index));
+	}
+
+	public double getLastX() {
+		return getX(size - 1);
+	}
+
+	public double getLastY() {
+		return getY(size - 1);
+	}
+
+	public void set(int index, double x, double y) {
+		checkIndex(index);
+		coords[offset + index * 2] = x;
+		coords[offset + index * 2 + 1] = y;
+	}
+
+	public void add(double x, double y) {
+		checkResizable();
+		ensureCapacity(size + 1);
+		coords[size * 2] = x;
+		coords[size * 2 + 1] = y;
+		size++;
+	}
+
+	public void add(Polyline2D other) {
+		add(other, 0, other.size);
+	}
+
+	/*
+	 *  Appends the points [from, to) of the other polyline.
+	 */
+	public void add(Polyline2D other, int from, int to) {
+		checkResizable();
+		if (from < 0 || to > other.size || from > to) {
+			throw new IndexOutOfBoundsException("range [" + from + ", " + to + ") of " + other.size);
+		}
+		int n = to - from;
+		ensureCapacity(size + n);
+		System.arraycopy(other.coords, other.offset + from * 2, coords, size * 2, n * 2);
+		size += n;
+	}
+
+	public void clear() {
+		checkResizable();
+		size = 0;
+	}
+
+	public void ensureCapacity(int capacity) {
+		checkResizable();
+		if (capacity * 2 > coords.length) {
+			int newLength = Math.max(capacity * 2, coords.length + (coords.length >> 1));
+			coords = Arrays.copyOf(coords, newLength);
+		}
+	}
+
+	/*
+	 *  Returns a view on the points [from, to) sharing the coordinate array.
+	 */
+	public Polyline2D subPath(int from, int to) {
+		if (from < 0 || to > size || from > to) {
+			throw new IndexOutOfBoundsException("range [" + from + ", " + to + ") of " + size);
+		}
+		return new Polyline2D(coords, offset + from * 2, to - from);
+	}
+
+	public Polyline2D copy() {
+		Polyline2D ret = new Polyline2D(size);
+		ret.add(this);
+		return ret;
+	}
+
+	/*
+	 *  Returns a copy of the interleaved x/y coordinates.
+	 */
+	public double[] toArray() {
+		return Arrays.copyOfRange(coords, offset, offset + size * 2);
+	}
+
+	/*
+	 *  Returns a List<Point2D> view on this polyline. Points are created on
+	 *  access, writes through set() and add() go to this polyline.
+	 */
+	public List<Point2D> asList() {
+		return new PointListView(this);
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+		}
+	}
+
+	private void checkResizable() {
+		if (view) {
+			throw new UnsupportedOperationException("subPath views can not be resized");
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < size; i++) {
+			if (i > 0) sb.append(", ");
+			sb.append('(').append(getX(i)).append(", ").append(getY(i)).append(')');
+		}
+		return sb.append(']').toString();
+	}
+
+	private static class PointListView extends AbstractList<Point2D> implements RandomAccess {
+		private final Polyline2D polyline;
+
+		PointListView(Polyline2D polyline) {
+			this.polyline = polyline;
+		}
+
+		@Override
+		public Point2D get(int index) {
+			return polyline.get(index);
+		}
+
+		@Override
+		public Point2D set(int index, Point2D p) {
+			Point2D old = polyline.get(index);
+			polyline.set(index, p.getX(), p.getY());
+			return old;
+		}
+
+		@Override
+		public void add(int index, Point2D p) {
+			if (index != polyline.size) {
+				throw new UnsupportedOperationException("points can only be appended");
+			}
+			polyline.add(p.getX(), p.getY());
+			modCount++;
+		}
+
+		@Override
+		public void clear() {
+			polyline.clear();
+			modCount++;
+		}
+
+		@Override
+		public int size() {
+			return polyline.size;
+		}
+	}
+}
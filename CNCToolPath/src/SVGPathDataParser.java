@@ -0,0 +1,462 @@
+import java.util.function.Consumer;
+
+/*
+ *  Parser for the path data ("d" attribute) of SVG path elements.
+ *
+ *  The characters are scanned directly, without tokenizing into strings.
+ *  Numbers may be separated by whitespace, commas, or nothing at all when the
+ *  next number starts with a sign or a second decimal point ("1-2.5e3",
+ *  "0.5.5"). A command letter may be omitted when it repeats the previous one;
+ *  coordinates following a moveto are treated as lineto.
+ *
+ *  Every subpath (started by a moveto, ended by the next moveto, a closepath
+ *  or the end of the data) is handed to the consumer as its own polyline.
+ *  Points are written straight into that polyline, consecutive duplicate
+ *  points and the repeated start point of a closed subpath are skipped.
+ *  Bezier curves and elliptical arcs are flattened into line segments that
+ *  deviate at most tolerance from the true curve: Beziers are subdivided only
+ *  where they are not yet flat enough, arcs get a step angle derived from
+ *  their radius. Flat curves therefore produce few points and tight curves
+ *  many.
+ *
+ *  A parser instance keeps state while parsing and must not be shared
+ *  between threads.
+ */
+public class SVGPathDataParser {
+
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	public static final double DEFAULT_TOLERANCE = 0.01;
+
+	private static final int MAX_SUBDIVISION_DEPTH = 16;
+
+	private final double tolerance;
+	// stack of cubic curves (8 values each) for the subdivision
+	private final double[] curveStack = new double[8 * (MAX_SUBDIVISION_DEPTH + 1)];
+	private final int[] depthStack = new int[MAX_SUBDIVISION_DEPTH + 1];
+
+	private CharSequence data;
+	private int pos;
+	private int length;
+
+	private Consumer<Polyline2D> consumer;
+	private Polyline2D out;
+	private double currentX, currentY;
+	private double startX, startY;
+	// control point of the previous curve for the reflection of S and T
+	private double controlX, controlY;
+	private char previousCurve;
+
+	public SVGPathDataParser() {
+		this(DEFAULT_TOLERANCE);
+	}
+
+	public SVGPathDataParser(double tolerance) {
+		if (!(tolerance > 0)) {
+			throw new IllegalArgumentException("tolerance must be greater than 0");
+		}
+		this.tolerance = tolerance;
+	}
+
+	public double getTolerance() {
+		return tolerance;
+	}
+
+	/*
+	 *  Passes the subpaths of the path data to the consumer. On malformed data
+	 *  the subpaths up to the error are passed on and an
+	 *  IllegalArgumentException is thrown.
+	 */
+	public void parse(CharSequence d, Consumer<Polyline2D> consumer) {
+		this.data = d;
+		this.pos = 0;
+		this.length = d.length();
+		this.consumer = consumer;
+		this.out = null;
+		this.currentX = 0;
+		this.currentY = 0;
+		this.startX = 0;
+		this.startY = 0;
+		this.previousCurve = 0;
+
+		try {
+			char command = 0;
+			skipSeparators();
+			while (pos < length) {
+				char c = data.charAt(pos);
+				if (isCommand(c)) {
+					command = c;
+					pos++;
+				} else if (command == 0 || command == 'z' || command == 'Z' || !isNumberStart(c)) {
+					throw error("Unexpected character '" + c + "'");
+				} else if (command == 'M') {
+					command = 'L'; // implicit lineto after moveto
+				} else if (command == 'm') {
+					command = 'l';
+				}
+				executeCommand(command);
+				skipSeparators();
+			}
+		} finally {
+			endSubpath();
+			this.data = null;
+			this.consumer = null;
+		}
+	}
+
+	private void executeCommand(char command) {
+		boolean relative = Character.isLowerCase(command);
+		double baseX = relative ? currentX : 0;
+		double baseY = relative ? currentY : 0;
+
+		char curve = 0;
+		switch (Character.toUpperCase(command)) {
+		case 'M':
+			moveTo(baseX + readNumber(), baseY + readNumber());
+			break;
+		case 'L':
+			lineTo(baseX + readNumber(), baseY + readNumber());
+			break;
+		case 'H':
+			lineTo(baseX + readNumber(), currentY);
+			break;
+		case 'V':
+			lineTo(currentX, baseY + readNumber());
+			break;
+		case 'Z':
+			// the polygon is closed implicitly, only the current point moves back
+			if (out != null && out.size() > 1 && out.getLastX() == startX && out.getLastY() == startY) {
+				out = out.subPath(0, out.size() - 1).copy();
+			}
+			endSubpath();
+			currentX = startX;
+			currentY = startY;
+			break;
+		case 'C': {
+			double x1 = baseX + readNumber(), y1 = baseY + readNumber();
+			double x2 = baseX + readNumber(), y2 = baseY + readNumber();
+			cubicTo(x1, y1, x2, y2, baseX + readNumber(), baseY + readNumber());
+			curve = 'C';
+			break;
+		}
+		case 'S': {
+			double x1 = previousCurve == 'C' ? 2 * currentX - controlX : currentX;
+			double y1 = previousCurve == 'C' ? 2 * currentY - controlY : currentY;
+			double x2 = baseX + readNumber(), y2 = baseY + readNumber();
+			cubicTo(x1, y1, x2, y2, baseX + readNumber(), baseY + readNumber());
+			curve = 'C';
+			break;
+		}
+		case 'Q': {
+			double x1 = baseX + readNumber(), y1 = baseY + readNumber();
+			quadTo(x1, y1, baseX + readNumber(), baseY + readNumber());
+			curve = 'Q';
+			break;
+		}
+		case 'T': {
+			double x1 = previousCurve == 'Q' ? 2 * currentX - controlX : currentX;
+			double y1 = previousCurve == 'Q' ? 2 * currentY - controlY : currentY;
+			quadTo(x1, y1, baseX + readNumber(), baseY + readNumber());
+			curve = 'Q';
+			break;
+		}
+		case 'A': {
+			double rx = readNumber(), ry = readNumber(), rotation = readNumber();
+			boolean largeArc = readFlag();
+			boolean sweep = readFlag();
+			arcTo(rx, ry, rotation, largeArc, sweep, baseX + readNumber(), baseY + readNumber());
+			break;
+		}
+		default:
+			throw error("Unknown command '" + command + "'");
+		}
+		previousCurve = curve;
+	}
+
+	private void quadTo(double qx, double qy, double x, double y) {
+		controlX = qx;
+		controlY = qy;
+		// exact degree elevation to a cubic
+		double x1 = currentX + 2.0 / 3.0 * (qx - currentX), y1 = currentY + 2.0 / 3.0 * (qy - currentY);
+		double x2 = x + 2.0 / 3.0 * (qx - x), y2 = y + 2.0 / 3.0 * (qy - y);
+		flattenCubic(x1, y1, x2, y2, x, y);
+	}
+
+	private void cubicTo(double x1, double y1, double x2, double y2, double x, double y) {
+		controlX = x2;
+		controlY = y2;
+		flattenCubic(x1, y1, x2, y2, x, y);
+	}
+
+	/*
+	 *  De Casteljau subdivision with an explicit stack. A part is flat enough
+	 *  when both control points are within tolerance of its chord, which bounds
+	 *  the distance of the curve itself.
+	 */
+	private void flattenCubic(double x1, double y1, double x2, double y2, double x3, double y3) {
+		double[] st = curveStack;
+		int top = 0;
+		st[0] = currentX; st[1] = currentY; st[2] = x1; st[3] = y1;
+		st[4] = x2; st[5] = y2; st[6] = x3; st[7] = y3;
+		depthStack[0] = 0;
+
+		while (top >= 0) {
+			int o = top * 8;
+			int depth = depthStack[top];
+			if (depth >= MAX_SUBDIVISION_DEPTH || isFlat(st, o)) {
+				lineTo(st[o + 6], st[o + 7]);
+				top--;
+				continue;
+			}
+			// split at t = 0.5, the right half replaces this entry and the left
+			// half goes on top so that it is emitted first
+			double ax = st[o], ay = st[o + 1];
+			double bx = st[o + 2], by = st[o + 3];
+			double cx = st[o + 4], cy = st[o + 5];
+			double dx = st[o + 6], dy = st[o + 7];
+			double abx = (ax + bx) / 2, aby = (ay + by) / 2;
+			double bcx = (bx + cx) / 2, bcy = (by + cy) / 2;
+			double cdx = (cx + dx) / 2, cdy = (cy + dy) / 2;
+			double abcx = (abx + bcx) / 2, abcy = (aby + bcy) / 2;
+			double bcdx = (bcx + cdx) / 2, bcdy = (bcy + cdy) / 2;
+			double mx = (abcx + bcdx) / 2, my = (abcy + bcdy) / 2;
+
+			st[o] = mx; st[o + 1] = my; st[o + 2] = bcdx; st[o + 3] = bcdy;
+			st[o + 4] = cdx; st[o + 5] = cdy;
+			depthStack[top] = depth + 1;
+
+			int n = o + 8;
+			st[n] = ax; st[n + 1] = ay; st[n + 2] = abx; st[n + 3] = aby;
+			st[n + 4] = abcx; st[n + 5] = abcy; st[n + 6] = mx; st[n + 7] = my;
+			depthStack[++top] = depth + 1;
+		}
+	}
+
+	/*
+	 *  True if both control points are within tolerance of the chord segment.
+	 *  A control point beyond an end of the chord is measured to that end, a
+	 *  collinear one that overshoots is not flat.
+	 */
+	private boolean isFlat(double[] st, int o) {
+		double ax = st[o], ay = st[o + 1];
+		double chordX = st[o + 6] - ax, chordY = st[o + 7] - ay;
+		double chord2 = chordX * chordX + chordY * chordY;
+		for (int k = 2; k <= 4; k += 2) {
+			double px = st[o + k] - ax, py = st[o + k + 1] - ay;
+			double t = chord2 > 0 ? Math.max(0, Math.min(1, (px * chordX + py * chordY) / chord2)) : 0;
+			double ex = px - t * chordX, ey = py - t * chordY;
+			if (ex * ex + ey * ey > tolerance * tolerance) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 *  Elliptical arc in endpoint notation, converted to center notation as
+	 *  described in the implementation notes of the SVG specification.
+	 */
+	private void arcTo(double rx, double ry, double rotation, boolean largeArc, boolean sweep, double x, double y) {
+		double x0 = currentX, y0 = currentY;
+		rx = Math.abs(rx);
+		ry = Math.abs(ry);
+		if (rx == 0 || ry == 0 || (x0 == x && y0 == y)) {
+			lineTo(x, y);
+			return;
+		}
+
+		double phi = Math.toRadians(rotation % 360);
+		double cosPhi = Math.cos(phi), sinPhi = Math.sin(phi);
+		double hx = (x0 - x) / 2, hy = (y0 - y) / 2;
+		double x1p = cosPhi * hx + sinPhi * hy;
+		double y1p = -sinPhi * hx + cosPhi * hy;
+
+		// scale up radii that are too small to reach the end point
+		double lambda = (x1p * x1p) / (rx * rx) + (y1p * y1p) / (ry * ry);
+		if (lambda > 1) {
+			double scale = Math.sqrt(lambda);
+			rx *= scale;
+			ry *= scale;
+		}
+
+		double rx2 = rx * rx, ry2 = ry * ry;
+		double num = rx2 * ry2 - rx2 * y1p * y1p - ry2 * x1p * x1p;
+		double den = rx2 * y1p * y1p + ry2 * x1p * x1p;
+		double coef = Math.sqrt(Math.max(0, num / den));
+		if (largeArc == sweep) {
+			coef = -coef;
+		}
+		double cxp = coef * rx * y1p / ry;
+		double cyp = -coef * ry * x1p / rx;
+		double cx = cosPhi * cxp - sinPhi * cyp + (x0 + x) / 2;
+		double cy = sinPhi * cxp + cosPhi * cyp + (y0 + y) / 2;
+
+		double theta1 = Math.atan2((y1p - cyp) / ry, (x1p - cxp) / rx);
+		double dTheta = Math.atan2((-y1p - cyp) / ry, (-x1p - cxp) / rx) - theta1;
+		if (sweep && dTheta < 0) {
+			dTheta += 2 * Math.PI;
+		} else if (!sweep && dTheta > 0) {
+			dTheta -= 2 * Math.PI;
+		}
+
+		double r = Math.max(rx, ry);
+		double step = r > tolerance ? 2 * Math.acos(1 - tolerance / r) : Math.PI / 2;
+		int segments = Math.max(1, (int) Math.ceil(Math.abs(dTheta) / step));
+		for (int i = 1; i < segments; i++) {
+			double theta = theta1 + dTheta * i / segments;
+			double ex = rx * Math.cos(theta), ey = ry * Math.sin(theta);
+			lineTo(cosPhi * ex - sinPhi * ey + cx, sinPhi * ex + cosPhi * ey + cy);
+		}
+		// end exactly on the given point
+		lineTo(x, y);
+	}
+
+	private void moveTo(double x, double y) {
+		endSubpath();
+		out = new Polyline2D();
+		out.add(x, y);
+		currentX = startX = x;
+		currentY = startY = y;
+	}
+
+	private void lineTo(double x, double y) {
+		if (out == null) {
+			// drawing after a closepath continues from the start point
+			out = new Polyline2D();
+			out.add(currentX, currentY);
+		}
+		currentX = x;
+		currentY = y;
+		if (out.getLastX() != x || out.getLastY() != y) {
+			out.add(x, y);
+		}
+	}
+
+	private void endSubpath() {
+		if (out != null && out.size() > 1) {
+			consumer.accept(out);
+		}
+		out = null;
+	}
+
+	private static boolean isCommand(char c) {
+		switch (c) {
+		case 'M': case 'm': case 'L': case 'l': case 'H': case 'h': case 'V': case 'v': case 'Z': case 'z':
+		case 'C': case 'c': case 'S': case 's': case 'Q': case 'q': case 'T': case 't': case 'A': case 'a':
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private static boolean isNumberStart(char c) {
+		return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.';
+	}
+
+	private void skipSeparators() {
+		while (pos < length) {
+			char c = data.charAt(pos);
+			if (c == ' ' || c == ',' || c == '\t' || c == '\n' || c == '\r' || c == '\f') {
+				pos++;
+			} else {
+				break;
+			}
+		}
+	}
+
+	/*
+	 *  Arc flags are single digits that need no separator ("a1 1 0 01 10 10").
+	 */
+	private boolean readFlag() {
+		skipSeparators();
+		if (pos < length) {
+			char c = data.charAt(pos);
+			if (c == '0' || c == '1') {
+				pos++;
+				return c == '1';
+			}
+		}
+		throw error("Expected arc flag");
+	}
+
+	private double readNumber() {
+		skipSeparators();
+		int start = pos;
+		boolean negative = false;
+		if (pos < length && (data.charAt(pos) == '-' || data.charAt(pos) == '+')) {
+			negative = data.charAt(pos) == '-';
+			pos++;
+		}
+		int unsignedStart = pos;
+
+		long mantissa = 0;
+		int digits = 0;
+		int scale = 0;
+		boolean anyDigit = false;
+		char c;
+		while (pos < length && (c = data.charAt(pos)) >= '0' && c <= '9') {
+			anyDigit = true;
+			if (digits < 18) {
+				mantissa = mantissa * 10 + (c - '0');
+				if (mantissa != 0) digits++;
+			} else {
+				scale++;
+			}
+			pos++;
+		}
+		if (pos < length && data.charAt(pos) == '.') {
+			pos++;
+			while (pos < length && (c = data.charAt(pos)) >= '0' && c <= '9') {
+				anyDigit = true;
+				if (digits < 18) {
+					mantissa = mantissa * 10 + (c - '0');
+					if (mantissa != 0) digits++;
+					scale--;
+				}
+				pos++;
+			}
+		}
+		if (!anyDigit) {
+			pos = start;
+			throw error("Expected number");
+		}
+		if (pos + 1 < length && (data.charAt(pos) == 'e' || data.charAt(pos) == 'E')) {
+			// only an exponent if digits follow, otherwise the 'e' is not ours
+			int expStart = pos;
+			pos++;
+			boolean expNegative = false;
+			if (data.charAt(pos) == '-' || data.charAt(pos) == '+') {
+				expNegative = data.charAt(pos) == '-';
+				pos++;
+			}
+			int exponent = 0;
+			boolean anyExpDigit = false;
+			while (pos < length && (c = data.charAt(pos)) >= '0' && c <= '9') {
+				anyExpDigit = true;
+				if (exponent < 10000) exponent = exponent * 10 + (c - '0');
+				pos++;
+			}
+			if (anyExpDigit) {
+				scale += expNegative ? -exponent : exponent;
+			} else {
+				pos = expStart;
+			}
+		}
+
+		double value;
+		if (digits <= 15 && scale >= -22 && scale <= 22) {
+			// both operands are exact, so a single operation rounds correctly
+			value = scale < 0 ? mantissa / POWERS_OF_TEN[-scale] : mantissa * POWERS_OF_TEN[scale];
+		} else {
+			value = Double.parseDouble(data.subSequence(unsignedStart, pos).toString());
+		}
+		return negative ? -value : value;
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at position " + pos + " of path data");
+	}
+}
@@ -1,135 +1,189 @@
 import java.awt.geom.Point2D;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.StringTokenizer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
 import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
+/*
+ *  Reads the path elements of SVG files as contours.
+ *
+ *  A reader only holds its immutable curve tolerance, every call works on its
+ *  own handler and path data parser. The shared instance and all methods can
+ *  be used from several threads at the same time.
+ */
 public class SVGPathReader {
-	private static SVGPathReader instance = null;
+	private static final SVGPathReader instance = new SVGPathReader();
+
+	private static final int MAX_POOLED_PARSERS = 32;
+	private static final SAXParserFactory parserFactory = createParserFactory();
+	// offer fails once the pool is full, so it never holds more than MAX_POOLED_PARSERS
+	private static final BlockingQueue<SAXParser> parserPool = new ArrayBlockingQueue<>(MAX_POOLED_PARSERS);
+
+	private final double curveTolerance;
 	
 	public static SVGPathReader getInstance() {
-		if (instance == null) {
-			instance = new SVGPathReader();
-		}		
 		return instance;
 	}
+
+	public SVGPathReader() {
+		this(SVGPathDataParser.DEFAULT_TOLERANCE);
+	}
+
+	/*
+	 *  curveTolerance is the maximum distance between a curve and the line
+	 *  segments it is approximated with, in SVG user units.
+	 */
+	public SVGPathReader(double curveTolerance) {
+		this.curveTolerance = curveTolerance;
+	}
 	
 	public List<Point2D> readPathFromSVGFile(File file) {
-		List<Point2D> path = null;
-    	try
-    	{
-        	SAXParserFactory factory = SAXParserFactory.newInstance();
-            SAXParser saxParser = factory.newSAXParser();
-
-            SimpleSVGHandler handler = new SimpleSVGHandler();
-
-            saxParser.parse(file.getAbsoluteFile(), handler);  
-            
-            path = handler.getCoordinates();
-        } catch (IOException | SAXException | ParserConfigurationException e) {
-            e.printStackTrace();
-        }
-    	return path;
+		return readPolylineFromSVGFile(file).asList();
+	}
+
+	/*
+	 *  Returns the points of all paths in the file merged into one polyline.
+	 */
+	public Polyline2D readPolylineFromSVGFile(File file) {
+		List<Contour2D> contours = readContoursFromSVGFile(file);
+		Polyline2D path = new Polyline2D();
+		for (Contour2D contour : contours) {
+			path.add(contour.path);
+		}
+		return path;
+	}
+
+	/*
+	 *  Returns one contour for every subpath of every path element in the file.
+	 *  Contours are named after the id of their path element. Path data with an
+	 *  error is used up to the error, the warnings the streaming variant below
+	 *  returns go to System.err, prefixed with the file as in ToolPathBatch. A
+	 *  file that can not be read or parsed at all throws an
+	 *  UncheckedIOException.
+	 */
+	public List<Contour2D> readContoursFromSVGFile(File file) {
+		List<Contour2D> contours = new ArrayList<>();
+		try {
+			for (String warning : readContoursFromSVGFile(file, contours::add)) {
+				System.err.println(file + ": " + warning);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return contours;
+	}
+
+	/*
+	 *  Streams the contours of the file to the consumer. Each contour is passed
+	 *  on as soon as its path element has been parsed, on the calling thread.
+	 *  The file is read through a memory mapped channel and the SAX parser is
+	 *  taken from a pool, so concurrent calls are fine.
+	 *
+	 *  Like a browser, path data with an error is used up to the error. The
+	 *  returned list names every path element this happened to, it is empty
+	 *  for a clean file.
+	 */
+	public List<String> readContoursFromSVGFile(File file, Consumer<Contour2D> consumer) throws IOException {
+		SAXParser saxParser = acquireParser();
+		try (InputStream in = new MappedFileInputStream(file.toPath())) {
+			InputSource source = new InputSource(in);
+			source.setSystemId(file.getAbsoluteFile().toURI().toString());
+			SimpleSVGHandler handler = new SimpleSVGHandler(curveTolerance, consumer);
+			saxParser.parse(source, handler);
+			return handler.getWarnings();
+		} catch (SAXException e) {
+			throw new IOException("Could not parse " + file + ": " + e.getMessage(), e);
+		} finally {
+			releaseParser(saxParser);
+		}
+	}
+
+	private static SAXParser acquireParser() throws IOException {
+		SAXParser parser = parserPool.poll();
+		if (parser != null) {
+			return parser;
+		}
+		try {
+			synchronized (parserFactory) {
+				return parserFactory.newSAXParser();
+			}
+		} catch (ParserConfigurationException | SAXException e) {
+			throw new IOException("Could not create SAX parser", e);
+		}
+	}
+
+	private static void releaseParser(SAXParser parser) {
+		try {
+			parser.reset();
+		} catch (UnsupportedOperationException e) {
+			return; // not reusable
+		}
+		parserPool.offer(parser);
+	}
+
+	private static SAXParserFactory createParserFactory() {
+		SAXParserFactory factory = SAXParserFactory.newInstance();
+		try {
+			// SVG files often reference the W3C DTD, which is not needed to read paths
+			factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+		} catch (ParserConfigurationException | SAXException e) {
+			// parser does not know the feature, keep the default
+		}
+		return factory;
 	}
 }
 
 
 class SimpleSVGHandler extends DefaultHandler {
-   	private List<Point2D> path = new ArrayList<>();
+   	private final Consumer<Contour2D> consumer;
+   	private final List<String> warnings = new ArrayList<>();
+   	private SVGPathDataParser parser;
+   	private int pathCount = 0;
+
+   	SimpleSVGHandler(double curveTolerance, Consumer<Contour2D> consumer) {
+   		this.parser = new SVGPathDataParser(curveTolerance);
+   		this.consumer = consumer;
+   	}
     
    	@Override
    	public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
    		if("path".equals(qName)) {
    			String cs = attributes.getValue("d");
-   			StringTokenizer t = new StringTokenizer(cs, " ");
-   			boolean isAbsolute = true;
-   			boolean vertical = false;
-   			boolean horizontal = false;
-   				
-   			while (t.hasMoreElements() ) {
-   				String el = t.nextToken();
-   				if(el.length() == 1 && !"0".equals(el)) { // some letter
-   	   				if("m".equals(el) || "l".equals(el)) {
-   	   					isAbsolute = false; // points indicate movements from one point to the next
-   						vertical = false;
-   						horizontal = false;
-   	   				} else if ("M".equals(el) || "L".equals(el)) {
-   	   					isAbsolute = true;
-   						vertical = false;
-   						horizontal = false;
-   	   				} else if ("v".equals(el)) { // vertical (y) delta only
-   	   					isAbsolute = false;
-   	   					vertical = true;
-   	   					horizontal = false;
-   	   				} else if ("V".equals(el)) { // vertical (y) delta only
-   	   					isAbsolute = true;
-   	   					vertical = true;
-   	   					horizontal = false;
-   	   				} else if ("h".equals(el)) { // vertical (y) delta only
-   	   					isAbsolute = false;
-   	   					horizontal = true;
-   	   					vertical = false;
-   	   				} else if ("H".equals(el)) { // vertical (y) delta only
-   	   					isAbsolute = true;
-   	   					horizontal = true;
-   	   					vertical = false;
-   	   				} else {
-   	   					System.out.println("Unhandled control character: "+el);
-   	   				}
-   				} else {
-   					if(vertical || horizontal) {
-   						Point2D p = path.getLast();
-   						// only a single value expected
-   						double z =  Double.parseDouble(el);
-   						if (isAbsolute) {
-   							if(vertical)
-   								p = new Point2D.Double(p.getX(), z);
-   							else
-   								p = new Point2D.Double(z, p.getY());
-   						} else {
-   							if(vertical)
-   								p = new Point2D.Double(p.getX(), p.getY()+z);
-   							else
-   								p = new Point2D.Double(p.getX()+z, p.getY());
-   						}
-
-   						path.add(p);
-   					} else {
-	   					// assuming a coordinate pair
-	   					StringTokenizer tc = new StringTokenizer(el, ",");
-	   					double x = Double.parseDouble(tc.nextToken());
-	   					double y = Double.parseDouble(tc.nextToken());
-	   					Point2D p = new Point2D.Double(x, y);
-						Point2D last = path.size() > 0 ? path.getLast() : new Point2D.Double(0,0);
-	
-	   					if(isAbsolute) {
-	   						if(! last.equals(p)) {
-	   	   						path.add(p);   							
-	   						}
-	   					} else {
-	   						if(p.getX() != 0 || p.getY() != 0) {
-	   	   						path.add(new Point2D.Double(last.getX()+p.getX(), last.getY()+p.getY()));   							
-	   						}
-	   					}
-   					}
-   				}
+   			pathCount++;
+   			if (cs == null) {
+   				return;
+   			}
+   			String id = attributes.getValue("id");
+   			String name = id != null ? id : "path" + pathCount;
+   			int[] index = { 0 };
+   			try {
+   				parser.parse(cs, subpath -> {
+   					index[0]++;
+   					consumer.accept(new Contour2D(index[0] == 1 ? name : name + "#" + index[0], subpath, null));
+   				});
+   			} catch (IllegalArgumentException e) {
+   				// like a browser, keep everything up to the error
+   				warnings.add("Invalid path data in " + name + ": " + e.getMessage());
    			}
-   			//System.out.println( cs );
-   			
    		}
    	}
 
-	public List<Point2D> getCoordinates() {
-		return path;
-	}
+   	List<String> getWarnings() {
+   		return warnings;
+   	}
 	
 }
\ No newline at end of file
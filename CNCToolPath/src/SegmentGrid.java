@@ -0,0 +1,235 @@
+import java.util.function.IntPredicate;
+
+/*
+ *  Uniform grid over the edges of a closed polygon for proximity queries.
+ *
+ *  The bounding box of the polygon is divided into about one cell per edge,
+ *  every edge is registered in the cells it actually passes, found by walking
+ *  along it from cell to cell (Amanatides-Woo). A long diagonal edge therefore
+ *  occupies a line of cells instead of its whole bounding box. The cells are
+ *  stored as one index array (counting sort), so building takes two linear
+ *  passes and no per cell objects.
+ *
+ *  Queries only look at the cells overlapping the query box, for evenly sized
+ *  edges that is a constant number of edges instead of the whole polygon.
+ *  Each edge is reported once per query even if it spans several cells.
+ *
+ *  Edge i runs from vertex i to vertex (i+1) % n. The grid keeps a reference
+ *  to the polygon, which must not change while the grid is used. Queries do
+ *  not modify the grid and may run concurrently.
+ */
+public class SegmentGrid {
+
+	// the cell an edge entered a cell from, START for the cell of its first vertex
+	private static final byte FROM_START = 0;
+	private static final byte FROM_LEFT = 1;
+	private static final byte FROM_RIGHT = 2;
+	private static final byte FROM_BELOW = 3;
+	private static final byte FROM_ABOVE = 4;
+	// query boxes are widened by this fraction of a cell against rounding in the walk
+	private static final double CELL_SLACK = 1e-9;
+
+	private final Polyline2D polygon;
+	private final int n;
+	private final double minX, minY, maxX, maxY;
+	private final double cellWidth, cellHeight;
+	private final int columns, rows;
+	private final int[] cellStart;
+	private final int[] cellEdges;
+	private final byte[] cellFrom;
+
+	public SegmentGrid(Polyline2D polygon) {
+		this.polygon = polygon;
+		this.n = polygon.size();
+
+		double x0 = Double.MAX_VALUE, y0 = Double.MAX_VALUE, x1 = -Double.MAX_VALUE, y1 = -Double.MAX_VALUE;
+		for (int i = 0; i < n; i++) {
+			x0 = Math.min(x0, polygon.getX(i));
+			y0 = Math.min(y0, polygon.getY(i));
+			x1 = Math.max(x1, polygon.getX(i));
+			y1 = Math.max(y1, polygon.getY(i));
+		}
+		if (n == 0) {
+			x0 = y0 = x1 = y1 = 0;
+		}
+		minX = x0;
+		minY = y0;
+		maxX = x1;
+		maxY = y1;
+
+		// about one cell per edge, keeping the cells roughly square
+		double width = Math.max(maxX - minX, Double.MIN_NORMAL);
+		double height = Math.max(maxY - minY, Double.MIN_NORMAL);
+		double cells = Math.max(1, n);
+		columns = (int) Math.max(1, Math.min(cells, Math.ceil(Math.sqrt(cells * width / height))));
+		rows = (int) Math.max(1, Math.min(cells, Math.ceil(cells / columns)));
+		cellWidth = width / columns;
+		cellHeight = height / rows;
+
+		// an edge passes at most one cell per column and row it spans
+		int[] walked = new int[columns + rows];
+		byte[] from = new byte[columns + rows];
+		cellStart = new int[columns * rows + 1];
+		for (int i = 0; i < n; i++) {
+			int count = walk(i, walked, from);
+			for (int k = 0; k < count; k++) {
+				cellStart[walked[k] + 1]++;
+			}
+		}
+		for (int c = 0; c < columns * rows; c++) {
+			cellStart[c + 1] += cellStart[c];
+		}
+		cellEdges = new int[cellStart[columns * rows]];
+		cellFrom = new byte[cellEdges.length];
+		int[] fill = new int[columns * rows];
+		System.arraycopy(cellStart, 0, fill, 0, fill.length);
+		for (int i = 0; i < n; i++) {
+			int count = walk(i, walked, from);
+			for (int k = 0; k < count; k++) {
+				int f = fill[walked[k]]++;
+				cellEdges[f] = i;
+				cellFrom[f] = from[k];
+			}
+		}
+	}
+
+	/*
+	 *  Writes the cells edge i passes into cells, in order from its first to
+	 *  its second vertex, and the direction each cell was entered from into
+	 *  from. Every step moves to a neighbouring column or row, whichever
+	 *  border the edge crosses first. Returns the number of cells.
+	 */
+	private int walk(int i, int[] cells, byte[] from) {
+		int j = (i + 1) % n;
+		double x0 = polygon.getX(i), y0 = polygon.getY(i);
+		double dx = polygon.getX(j) - x0, dy = polygon.getY(j) - y0;
+		int cx = column(x0), cy = row(y0);
+		int ex = column(polygon.getX(j)), ey = row(polygon.getY(j));
+		int sx = Integer.signum(ex - cx), sy = Integer.signum(ey - cy);
+		// edge parameters at which the next column and row border is crossed, and their spacing
+		double tx = sx == 0 ? Double.POSITIVE_INFINITY : (minX + (sx > 0 ? cx + 1 : cx) * cellWidth - x0) / dx;
+		double ty = sy == 0 ? Double.POSITIVE_INFINITY : (minY + (sy > 0 ? cy + 1 : cy) * cellHeight - y0) / dy;
+		double stepX = sx == 0 ? 0 : cellWidth / Math.abs(dx);
+		double stepY = sy == 0 ? 0 : cellHeight / Math.abs(dy);
+
+		int count = 0;
+		cells[count] = cy * columns + cx;
+		from[count++] = FROM_START;
+		while (cx != ex || cy != ey) {
+			if (cy == ey || (cx != ex && tx <= ty)) {
+				cx += sx;
+				tx += stepX;
+				from[count] = sx > 0 ? FROM_LEFT : FROM_RIGHT;
+			} else {
+				cy += sy;
+				ty += stepY;
+				from[count] = sy > 0 ? FROM_BELOW : FROM_ABOVE;
+			}
+			cells[count++] = cy * columns + cx;
+		}
+		return count;
+	}
+
+	public Polyline2D getPolygon() {
+		return polygon;
+	}
+
+	/*
+	 *  Calls visitor with every edge that may pass through the given box,
+	 *  until the visitor returns false. Returns false if the visit was stopped
+	 *  that way.
+	 */
+	public boolean forEachCandidate(double x0, double y0, double x1, double y1, IntPredicate visitor) {
+		if (n == 0 || x1 < minX || x0 > maxX || y1 < minY || y0 > maxY) {
+			return true;
+		}
+		int qx0 = column(x0 - cellWidth * CELL_SLACK), qx1 = column(x1 + cellWidth * CELL_SLACK);
+		int qy0 = row(y0 - cellHeight * CELL_SLACK), qy1 = row(y1 + cellHeight * CELL_SLACK);
+		for (int cy = qy0; cy <= qy1; cy++) {
+			for (int cx = qx0; cx <= qx1; cx++) {
+				int c = cy * columns + cx;
+				for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+					// columns and rows only grow or only shrink along an edge, so the cells it passes
+					// within the query follow each other; report the edge in the first of them only
+					if (!isFirstInQuery(cellFrom[k], cx, cy, qx0, qy0, qx1, qy1)) {
+						continue;
+					}
+					if (!visitor.test(cellEdges[k])) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/*
+	 *  Ray casting to the right of the point, edges are only fetched from the
+	 *  cells the ray passes.
+	 */
+	public boolean isInside(double x, double y) {
+		if (n == 0 || x < minX || x > maxX || y < minY || y > maxY) {
+			return false;
+		}
+		boolean[] inside = { false };
+		forEachCandidate(x, y, maxX, y, i -> {
+			int j = (i + 1) % n;
+			double yi = polygon.getY(i), yj = polygon.getY(j);
+			if ((yi > y) != (yj > y)) {
+				double xi = polygon.getX(i), xj = polygon.getX(j);
+				if (x < (xj - xi) * (y - yi) / (yj - yi) + xi) {
+					inside[0] = !inside[0];
+				}
+			}
+			return true;
+		});
+		return inside[0];
+	}
+
+	/*
+	 *  Whether any edge is closer than distance to the point.
+	 */
+	public boolean isWithinDistance(double x, double y, double distance) {
+		double distanceSq = distance * distance;
+		return !forEachCandidate(x - distance, y - distance, x + distance, y + distance, i -> {
+			int j = (i + 1) % n;
+			return segmentDistanceSq(x, y, polygon.getX(i), polygon.getY(i), polygon.getX(j), polygon.getY(j)) >= distanceSq;
+		});
+	}
+
+	/*
+	 *  Whether an edge entered the query cell cx, cy from a cell outside the
+	 *  query, or starts there.
+	 */
+	private static boolean isFirstInQuery(byte from, int cx, int cy, int qx0, int qy0, int qx1, int qy1) {
+		switch (from) {
+		case FROM_LEFT:
+			return cx - 1 < qx0;
+		case FROM_RIGHT:
+			return cx + 1 > qx1;
+		case FROM_BELOW:
+			return cy - 1 < qy0;
+		case FROM_ABOVE:
+			return cy + 1 > qy1;
+		default:
+			return true;
+		}
+	}
+
+	private int column(double x) {
+		return Math.max(0, Math.min(columns - 1, (int) ((x - minX) / cellWidth)));
+	}
+
+	private int row(double y) {
+		return Math.max(0, Math.min(rows - 1, (int) ((y - minY) / cellHeight)));
+	}
+
+	private static double segmentDistanceSq(double px, double py, double ax, double ay, double bx, double by) {
+		double dx = bx - ax, dy = by - ay;
+		double lenSq = dx * dx + dy * dy;
+		double t = lenSq > 0 ? ((px - ax) * dx + (py - ay) * dy) / lenSq : 0;
+		t = Math.max(0, Math.min(1, t));
+		double ex = ax + t * dx - px, ey = ay + t * dy - py;
+		return ex * ex + ey * ey;
+	}
+}
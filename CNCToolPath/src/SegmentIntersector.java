@@ -0,0 +1,193 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ *  Finds all crossings between the edges of a closed polygon.
+ *
+ *  The edges are swept from left to right in order of their smallest x
+ *  coordinate. Only edges that are still "active" (their x range reaches the
+ *  current sweep position) and whose y range overlaps are tested against each
+ *  other, so the number of exact tests is proportional to the number of edges
+ *  the sweep line cuts at any time instead of n².
+ *
+ *  The active edges are kept in horizontal bands about one average edge
+ *  height tall, every edge in the bands its y range covers. An edge only
+ *  looks at the bands it covers itself, so long edges stacked on top of each
+ *  other, which are all cut by the sweep line, are not tested against each
+ *  other at all. A pair is tested in the lowest band both cover only.
+ *
+ *  Adjacent edges (sharing a vertex) and parallel edges are never reported,
+ *  crossings exactly at a vertex are ignored as well.
+ */
+public class SegmentIntersector {
+
+	private static final double PARAMETER_EPSILON = 1e-9;
+	private static final double PARALLEL_EPSILON = 1e-12;
+	// the sweep polls the cancellation token every 256 edges
+	private static final int CANCEL_CHECK_MASK = 255;
+
+	/*
+	 *  A single crossing between the edges segmentA and segmentB. Edge i runs
+	 *  from vertex i to vertex (i+1) % n, tA and tB are the parameters of the
+	 *  crossing point along the respective edge (0 = start, 1 = end).
+	 */
+	public static class Intersection {
+		public final int segmentA;
+		public final int segmentB;
+		public final double tA;
+		public final double tB;
+		public final double x;
+		public final double y;
+
+		Intersection(int segmentA, int segmentB, double tA, double tB, double x, double y) {
+			this.segmentA = segmentA;
+			this.segmentB = segmentB;
+			this.tA = tA;
+			this.tB = tB;
+			this.x = x;
+			this.y = y;
+		}
+	}
+
+	public static List<Intersection> findIntersections(Polyline2D polygon) {
+		return findIntersections(polygon, CancellationToken.NONE);
+	}
+
+	/*
+	 *  The sweep polls cancel, a polygon that crosses itself everywhere has up
+	 *  to n² crossings.
+	 */
+	public static List<Intersection> findIntersections(Polyline2D polygon, CancellationToken cancel) {
+		int n = polygon.size();
+		List<Intersection> ret = new ArrayList<>();
+		if (n < 4) {
+			return ret; // a triangle can not cross itself
+		}
+
+		double[] xs = new double[n];
+		double[] ys = new double[n];
+		for (int i = 0; i < n; i++) {
+			xs[i] = polygon.getX(i);
+			ys[i] = polygon.getY(i);
+		}
+
+		double[] minX = new double[n];
+		double[] maxX = new double[n];
+		double[] minY = new double[n];
+		double[] maxY = new double[n];
+		double bottom = Double.MAX_VALUE, top = -Double.MAX_VALUE, heights = 0;
+		for (int i = 0; i < n; i++) {
+			int j = (i + 1) % n;
+			minX[i] = Math.min(xs[i], xs[j]);
+			maxX[i] = Math.max(xs[i], xs[j]);
+			minY[i] = Math.min(ys[i], ys[j]);
+			maxY[i] = Math.max(ys[i], ys[j]);
+			bottom = Math.min(bottom, minY[i]);
+			top = Math.max(top, maxY[i]);
+			heights += maxY[i] - minY[i];
+		}
+		int[] order = sortedOrder(minX);
+
+		// bands about as tall as the average edge, so an edge covers about two of them
+		double height = Math.max(top - bottom, Double.MIN_NORMAL);
+		int bands = (int) Math.max(1, Math.min(n, Math.ceil(height * n / Math.max(heights, Double.MIN_NORMAL))));
+		double bandHeight = height / bands;
+		int[][] active = new int[bands][];
+		int[] activeCount = new int[bands];
+
+		for (int k = 0; k < n; k++) {
+			if ((k & CANCEL_CHECK_MASK) == 0) {
+				cancel.checkCancelled();
+			}
+			int s = order[k];
+			double sweepX = minX[s];
+			int first = band(minY[s], bottom, bandHeight, bands), last = band(maxY[s], bottom, bandHeight, bands);
+
+			for (int b = first; b <= last; b++) {
+				int[] edges = active[b];
+				for (int a = activeCount[b] - 1; a >= 0; a--) {
+					int o = edges[a];
+					// drop edges that end left of the sweep line
+					if (maxX[o] < sweepX) {
+						edges[a] = edges[--activeCount[b]];
+						continue;
+					}
+					if (maxY[o] < minY[s] || minY[o] > maxY[s] || isAdjacent(s, o, n)
+							|| band(Math.max(minY[s], minY[o]), bottom, bandHeight, bands) != b) {
+						continue;
+					}
+					Intersection is = intersect(xs, ys, n, Math.min(s, o), Math.max(s, o));
+					if (is != null) {
+						ret.add(is);
+					}
+				}
+			}
+
+			for (int b = first; b <= last; b++) {
+				if (active[b] == null) {
+					active[b] = new int[4];
+				} else if (activeCount[b] == active[b].length) {
+					active[b] = Arrays.copyOf(active[b], active[b].length * 2);
+				}
+				active[b][activeCount[b]++] = s;
+			}
+		}
+
+		return ret;
+	}
+
+	private static int band(double y, double bottom, double bandHeight, int bands) {
+		return Math.min(bands - 1, Math.max(0, (int) ((y - bottom) / bandHeight)));
+	}
+
+	private static boolean isAdjacent(int a, int b, int n) {
+		int d = Math.abs(a - b);
+		return d == 1 || d == n - 1;
+	}
+
+	private static Intersection intersect(double[] xs, double[] ys, int n, int a, int b) {
+		double px = xs[a], py = ys[a];
+		double rx = xs[(a + 1) % n] - px, ry = ys[(a + 1) % n] - py;
+		double qx = xs[b], qy = ys[b];
+		double sx = xs[(b + 1) % n] - qx, sy = ys[(b + 1) % n] - qy;
+
+		double denom = rx * sy - ry * sx;
+		if (Math.abs(denom) < PARALLEL_EPSILON) return null; // parallel or collinear
+
+		double dx = qx - px, dy = qy - py;
+		double t = (dx * sy - dy * sx) / denom;
+		double u = (dx * ry - dy * rx) / denom;
+		if (t <= PARAMETER_EPSILON || t >= 1 - PARAMETER_EPSILON || u <= PARAMETER_EPSILON || u >= 1 - PARAMETER_EPSILON) {
+			return null;
+		}
+		return new Intersection(a, b, t, u, px + t * rx, py + t * ry);
+	}
+
+	/*
+	 *  The indices of key in ascending order of their key, equal keys in
+	 *  ascending order of their index. The keys are sorted as plain doubles
+	 *  and every index is then put at the first free place of its key, so
+	 *  there is no boxing and no input order makes it quadratic.
+	 */
+	private static int[] sortedOrder(double[] key) {
+		int n = key.length;
+		double[] sorted = key.clone();
+		Arrays.sort(sorted);
+		int[] order = new int[n];
+		int[] taken = new int[n];
+		for (int i = 0; i < n; i++) {
+			int lo = 0, hi = n;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (Double.compare(sorted[mid], key[i]) < 0) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			order[lo + taken[lo]++] = i;
+		}
+		return order;
+	}
+}
@@ -0,0 +1,463 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Stream;
+
+/*
+ *  Headless batch processing of SVG files:
+ *
+ *  java -cp cnctoolpath.jar ToolPathBatch [options] <directory|glob|file>...
+ *
+ *  Every SVG file is read, its contours are offset and written as G-code to a
+ *  file with the extension .nc next to the input. Files are processed
+ *  concurrently on one ForkJoinPool, which also runs the contours of each
+ *  file in parallel. At the end a line per file with the timings of the
+ *  stages is printed, followed by the PipelineMonitor totals of every stage
+ *  over all contours. The exit code is 1 if any file failed.
+ *
+ *  A file fails if any of its contours fails, its .nc file is not written
+ *  then. The G-code goes to a temporary file next to the output first, so
+ *  an error or a cancellation never leaves a truncated .nc file.
+ *
+ *  With --timeout the calculations still running after that many seconds are
+ *  cancelled and their files reported as failed.
+ *
+ *  A directory stands for the SVG files directly in it, a glob like
+ *  data/**.svg is matched against all files below its fixed leading part.
+ */
+public class ToolPathBatch {
+
+	private ToolPathConfig config = ToolPathConfig.DEFAULT;
+	private double simplifyTolerance = 0;
+	private double feedRate = GCodeWriter.DEFAULT_FEED_RATE;
+	private double plungeRate = GCodeWriter.DEFAULT_PLUNGE_RATE;
+	private double cutDepth = GCodeWriter.DEFAULT_CUT_DEPTH;
+	private double safeHeight = GCodeWriter.DEFAULT_SAFE_HEIGHT;
+	private int decimals = GCodeWriter.DEFAULT_DECIMALS;
+	private PolarTransform polar = null;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private File cacheDir = null;
+	private double timeout = 0;
+	private final List<String> inputs = new ArrayList<>();
+
+	private ToolPathCache cache;
+	private final PipelineMonitor monitor = new PipelineMonitor();
+	private final CancellationToken cancel = new CancellationToken();
+
+	/*
+	 *  Outcome of one input file, times in milliseconds.
+	 */
+	static class FileResult {
+		final Path file;
+		int contours, points, toolPaths, failed;
+		double readTime, calculateTime, writeTime, totalTime;
+		String error;
+
+		FileResult(Path file) {
+			this.file = file;
+		}
+
+		boolean isFailed() {
+			return error != null || failed > 0;
+		}
+	}
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		ToolPathBatch batch = new ToolPathBatch();
+		try {
+			batch.parseArguments(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			printUsage(System.err);
+			System.exit(2);
+		}
+		System.exit(batch.run() ? 0 : 1);
+	}
+
+	private static void printUsage(PrintStream out) {
+		out.println("Usage: ToolPathBatch [options] <directory|glob|file>...");
+		out.println("  --tool-radius <mm>         offset of the toolpath, default " + ToolPathConfig.DEFAULT.getToolRadius());
+		out.println("  --max-segment <mm>         maximum toolpath segment length, default " + ToolPathConfig.DEFAULT.getMaxPathSegmentLength());
+		out.println("  --remove-intersections     cut off loops of self intersecting toolpaths");
+		out.println("  --join <MITER|ROUND|SQUARE> corner joins, default " + PolygonOffsetter.DEFAULT.getJoinType());
+		out.println("  --simplify <mm>            simplify the input contours with this tolerance");
+		out.println("  --feed <mm/min>            feed rate, default " + GCodeWriter.DEFAULT_FEED_RATE);
+		out.println("  --plunge <mm/min>          plunge feed rate, default " + GCodeWriter.DEFAULT_PLUNGE_RATE);
+		out.println("  --depth <mm>               cut depth, default " + GCodeWriter.DEFAULT_CUT_DEPTH);
+		out.println("  --safe-height <mm>         height for rapid moves, default " + GCodeWriter.DEFAULT_SAFE_HEIGHT);
+		out.println("  --decimals <n>             decimals of the coordinates, default " + GCodeWriter.DEFAULT_DECIMALS);
+		out.println("  --polar [step]             rotary output, X radius and A angle, optionally resampled every step degrees");
+		out.println("  --threads <n>              worker threads, default number of processors");
+		out.println("  --cache-dir <dir>          keep calculated toolpaths on disk for later runs");
+		out.println("  --timeout <s>              cancel what is not done after this many seconds");
+	}
+
+	void parseArguments(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (!arg.startsWith("--")) {
+				inputs.add(arg);
+				continue;
+			}
+			switch (arg) {
+			case "--tool-radius":
+				config = config.withToolRadius(number(args, ++i));
+				break;
+			case "--max-segment":
+				config = config.withMaxPathSegmentLength((float) number(args, ++i));
+				break;
+			case "--remove-intersections":
+				config = config.withRemoveIntersections(true);
+				break;
+			case "--join":
+				PolygonOffsetter.JoinType joinType = PolygonOffsetter.JoinType.valueOf(value(args, ++i).toUpperCase(Locale.ROOT));
+				config = config.withOffsetter(new PolygonOffsetter(joinType, PolygonOffsetter.DEFAULT.getMiterLimit(),
+						PolygonOffsetter.DEFAULT.getArcTolerance()));
+				break;
+			case "--simplify":
+				simplifyTolerance = number(args, ++i);
+				break;
+			case "--feed":
+				feedRate = number(args, ++i);
+				break;
+			case "--plunge":
+				plungeRate = number(args, ++i);
+				break;
+			case "--depth":
+				cutDepth = number(args, ++i);
+				break;
+			case "--safe-height":
+				safeHeight = number(args, ++i);
+				break;
+			case "--decimals":
+				decimals = integer(args, ++i);
+				break;
+			case "--polar":
+				double step = 0;
+				if (i + 1 < args.length && !args[i + 1].startsWith("--") && isNumber(args[i + 1])) {
+					step = number(args, ++i);
+				}
+				polar = new PolarTransform(true, step);
+				break;
+			case "--threads":
+				threads = integer(args, ++i);
+				break;
+			case "--cache-dir":
+				cacheDir = new File(value(args, ++i));
+				break;
+			case "--timeout":
+				timeout = number(args, ++i);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + arg);
+			}
+		}
+		if (inputs.isEmpty()) {
+			throw new IllegalArgumentException("No input files");
+		}
+		if (threads < 1) {
+			throw new IllegalArgumentException("--threads must be at least 1");
+		}
+		if (timeout < 0) {
+			throw new IllegalArgumentException("--timeout must not be negative");
+		}
+		if (!(simplifyTolerance >= 0)) {
+			throw new IllegalArgumentException("--simplify must not be negative");
+		}
+		// the writer would only complain per file
+		GCodeWriter.checkSettings(feedRate, plungeRate, cutDepth, safeHeight, decimals);
+	}
+
+	private static String value(String[] args, int i) {
+		if (i >= args.length) {
+			throw new IllegalArgumentException("Missing value for " + args[i - 1]);
+		}
+		return args[i];
+	}
+
+	private static double number(String[] args, int i) {
+		String value = value(args, i);
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Not a number for " + args[i - 1] + ": " + value);
+		}
+	}
+
+	private static int integer(String[] args, int i) {
+		double value = number(args, i);
+		if (value != Math.rint(value) || Math.abs(value) > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Not an integer for " + args[i - 1] + ": " + args[i]);
+		}
+		return (int) value;
+	}
+
+	private static boolean isNumber(String s) {
+		try {
+			Double.parseDouble(s);
+			return true;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	/*
+	 *  Processes all inputs and prints the summary, returns false if any file
+	 *  failed.
+	 */
+	boolean run() {
+		List<Path> files;
+		try {
+			files = collectFiles(inputs);
+		} catch (IOException e) {
+			System.err.println("Could not list input files: " + e);
+			return false;
+		}
+		if (files.isEmpty()) {
+			System.err.println("No SVG files found");
+			return false;
+		}
+		cache = new ToolPathCache(ToolPathCache.DEFAULT_MAX_BYTES, cacheDir);
+
+		long start = System.nanoTime();
+		Timer timer = new Timer("ToolPathBatch timeout", true);
+		if (timeout > 0) {
+			timer.schedule(new TimerTask() {
+				@Override
+				public void run() {
+					cancel.cancel();
+				}
+			}, (long) (timeout * 1000));
+		}
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		List<FileResult> results;
+		try {
+			List<ForkJoinTask<FileResult>> tasks = new ArrayList<>();
+			for (Path file : files) {
+				tasks.add(pool.submit(() -> process(file, pool)));
+			}
+			results = new ArrayList<>();
+			for (ForkJoinTask<FileResult> task : tasks) {
+				results.add(task.join());
+			}
+		} finally {
+			pool.shutdown();
+			timer.cancel();
+		}
+		double wallTime = (System.nanoTime() - start) / 1e6;
+
+		printSummary(System.out, results, wallTime);
+		System.out.println();
+		monitor.printSummary(System.out);
+		return results.stream().noneMatch(FileResult::isFailed);
+	}
+
+	FileResult process(Path file, ForkJoinPool pool) {
+		FileResult result = new FileResult(file);
+		long start = System.nanoTime();
+		try {
+			cancel.checkCancelled();
+			String fileName = file.getFileName().toString();
+			List<Contour2D> contours = new ArrayList<>();
+			PipelineMonitor.Span span = monitor.start(PipelineMonitor.Stage.READ, fileName, 0);
+			for (String warning : SVGPathReader.getInstance().readContoursFromSVGFile(file.toFile(), contours::add)) {
+				System.err.println(file + ": " + warning);
+			}
+			span.stop(countPoints(contours));
+			if (simplifyTolerance > 0) {
+				for (Contour2D contour : contours) {
+					span = monitor.start(PipelineMonitor.Stage.SIMPLIFY, contour.name, contour.path.size());
+					contour.path = ToolPathCalculator.getInstance().removeRedundants(contour.path, simplifyTolerance);
+					span.stop(contour.path.size());
+				}
+			}
+			result.contours = contours.size();
+			result.points = countPoints(contours);
+			long read = System.nanoTime();
+			result.readTime = (read - start) / 1e6;
+
+			List<ToolPathResult> toolPaths = cache.calculateToolpaths(contours, config, pool, monitor, cancel, null);
+			for (String warning : cache.takeWarnings()) {
+				System.err.println(warning);
+			}
+			long calculated = System.nanoTime();
+			result.calculateTime = (calculated - read) / 1e6;
+
+			int toolPathPoints = 0;
+			for (ToolPathResult toolPath : toolPaths) {
+				if (toolPath.isSuccess()) {
+					toolPathPoints += toolPath.toolPath.size();
+					result.toolPaths++;
+				} else {
+					result.failed++;
+					System.err.println(file + ": toolpath of " + toolPath.contour.name + " failed: " + toolPath.error);
+				}
+			}
+			if (result.failed > 0) {
+				// G-code with contours missing would look complete
+				result.totalTime = (System.nanoTime() - start) / 1e6;
+				return result;
+			}
+			span = monitor.start(PipelineMonitor.Stage.WRITE, fileName, toolPathPoints);
+			Path output = outputFile(file.toAbsolutePath());
+			Path tmp = Files.createTempFile(output.getParent(), output.getFileName().toString(), ".tmp");
+			try {
+				try (GCodeWriter writer = GCodeWriter.open(tmp, feedRate, plungeRate, cutDepth, safeHeight, decimals, polar)) {
+					writer.writeHeader();
+					for (ToolPathResult toolPath : toolPaths) {
+						cancel.checkCancelled();
+						writer.writeContour(toolPath.contour.name, toolPath.toolPath);
+					}
+					writer.writeFooter();
+				}
+				Files.move(tmp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(tmp);
+			}
+			span.stop(toolPathPoints);
+			result.writeTime = (System.nanoTime() - calculated) / 1e6;
+		} catch (CancellationException e) {
+			result.error = "cancelled";
+		} catch (IOException | RuntimeException e) {
+			result.error = e.toString();
+		}
+		result.totalTime = (System.nanoTime() - start) / 1e6;
+		return result;
+	}
+
+	private static int countPoints(List<Contour2D> contours) {
+		int points = 0;
+		for (Contour2D contour : contours) {
+			points += contour.path.size();
+		}
+		return points;
+	}
+
+	static Path outputFile(Path input) {
+		String name = input.getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		return input.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + ".nc");
+	}
+
+	static List<Path> collectFiles(List<String> inputs) throws IOException {
+		List<Path> files = new ArrayList<>();
+		for (String input : inputs) {
+			Path path = Paths.get(input);
+			if (Files.isDirectory(path)) {
+				try (Stream<Path> list = Files.list(path)) {
+					list.filter(ToolPathBatch::isSVGFile).sorted().forEach(files::add);
+				}
+			} else if (Files.isRegularFile(path)) {
+				files.add(path);
+			} else {
+				files.addAll(glob(input));
+			}
+		}
+		return files;
+	}
+
+	/*
+	 *  Walks the directory before the first glob character and matches the
+	 *  pattern against the paths found there.
+	 */
+	static List<Path> glob(String pattern) throws IOException {
+		int wildcard = indexOfAny(pattern, "*?[{");
+		if (wildcard < 0) {
+			throw new IOException("No such file or directory: " + pattern);
+		}
+		int separator = Math.max(pattern.lastIndexOf('/', wildcard), pattern.lastIndexOf(File.separatorChar, wildcard));
+		Path base = Paths.get(separator >= 0 ? pattern.substring(0, separator + 1) : ".");
+		String relativePattern = separator >= 0 ? pattern.substring(separator + 1) : pattern;
+		List<PathMatcher> matchers = new ArrayList<>();
+		for (String variant : globVariants(relativePattern)) {
+			matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + variant));
+		}
+		List<Path> ret = new ArrayList<>();
+		if (!Files.isDirectory(base)) {
+			return ret;
+		}
+		try (Stream<Path> walk = Files.walk(base)) {
+			walk.filter(Files::isRegularFile).filter(p -> {
+				Path relative = base.relativize(p);
+				return matchers.stream().anyMatch(m -> m.matches(relative));
+			}).sorted().forEach(ret::add);
+		}
+		return ret;
+	}
+
+	/*
+	 *  In a Java glob, ** followed by a slash needs at least one directory,
+	 *  shells with globstar also match none. The pattern is returned with
+	 *  every combination of these occurrences left out as well, so the
+	 *  pattern from the README also finds the SVG files directly in jobs.
+	 */
+	static List<String> globVariants(String pattern) {
+		List<String> variants = new ArrayList<>();
+		variants.add(pattern);
+		String anyDirectories = "**/";
+		for (int from = 0; (from = pattern.indexOf(anyDirectories, from)) >= 0; from += anyDirectories.length()) {
+			int at = from;
+			for (int k = variants.size() - 1; k >= 0; k--) {
+				// the occurrence sits at the same position counted from the end in every variant so far
+				String v = variants.get(k);
+				int end = v.length() - (pattern.length() - at);
+				variants.add(v.substring(0, end) + v.substring(end + anyDirectories.length()));
+			}
+		}
+		return variants;
+	}
+
+	private static int indexOfAny(String s, String chars) {
+		for (int i = 0; i < s.length(); i++) {
+			if (chars.indexOf(s.charAt(i)) >= 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean isSVGFile(Path path) {
+		return Files.isRegularFile(path) && path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".svg");
+	}
+
+	static void printSummary(PrintStream out, List<FileResult> results, double wallTime) {
+		out.println(String.format(Locale.ROOT, "%-40s %8s %10s %9s %9s %9s %9s %9s  %s",
+				"File", "Contours", "Points", "Paths", "Read ms", "Calc ms", "Write ms", "Total ms", "Status"));
+		double read = 0, calculate = 0, write = 0;
+		int failedFiles = 0;
+		long points = 0;
+		for (FileResult r : results) {
+			out.println(String.format(Locale.ROOT, "%-40s %8d %10d %9d %9.1f %9.1f %9.1f %9.1f  %s",
+					abbreviate(r.file.toString(), 40), r.contours, r.points, r.toolPaths, r.readTime, r.calculateTime, r.writeTime, r.totalTime,
+					r.error != null ? "FAILED " + r.error : r.failed > 0 ? "FAILED " + r.failed + " contours, not written" : "ok"));
+			read += r.readTime;
+			calculate += r.calculateTime;
+			write += r.writeTime;
+			points += r.points;
+			if (r.isFailed()) {
+				failedFiles++;
+			}
+		}
+		out.println(String.format(Locale.ROOT, "%d files, %d failed, %d points, read %.0f ms, calculate %.0f ms, write %.0f ms, wall time %.0f ms",
+				results.size(), failedFiles, points, read, calculate, write, wallTime));
+	}
+
+	private static String abbreviate(String s, int length) {
+		return s.length() <= length ? s : "..." + s.substring(s.length() - length + 3);
+	}
+}
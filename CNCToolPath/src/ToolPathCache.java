@@ -0,0 +1,365 @@
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/*
+ *  Remembers calculated toolpaths, so unchanged contours are not offset again.
+ *
+ *  The key is a pair of independent 64 bit hashes over the coordinates of the
+ *  input polygon together with all toolpath parameters. The polygon itself is
+ *  not kept, two different polygons are treated as equal if both hashes and
+ *  the point count match, which is practically impossible by chance.
+ *
+ *  The memory tier is a LRU map limited by the estimated size of the stored
+ *  toolpaths. With a directory the toolpaths are also written to disk and
+ *  found again by later runs; the disk tier is never cleaned up automatically.
+ *  Files carry the ToolPathCalculator.ALGORITHM_VERSION in their name and
+ *  header, toolpaths of another version are a miss. Disk errors only cost
+ *  the cache, they are collected for takeWarnings.
+ *
+ *  Toolpaths are copied on the way in and out, callers may modify what they
+ *  get. All methods are thread safe, the calculation itself runs outside the
+ *  lock, so the same toolpath may occasionally be calculated twice.
+ */
+public class ToolPathCache {
+
+	public static final long DEFAULT_MAX_BYTES = 256L << 20;
+
+	private static final int FILE_MAGIC = 0x54504331; // "TPC1"
+	// magic, algorithm version, key (see Key.writeTo) and point count
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 8 + 1 + 4 + 4 + 8 + 8 + 4;
+	// rough size of the key, map entry and polyline objects
+	private static final long ENTRY_OVERHEAD = 200;
+
+	private final long maxBytes;
+	private final File directory;
+	private final LinkedHashMap<Key, Polyline2D> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long usedBytes = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private List<String> warnings = new ArrayList<>();
+
+	public ToolPathCache() {
+		this(DEFAULT_MAX_BYTES, null);
+	}
+
+	/*
+	 *  directory may be null to keep the cache in memory only.
+	 */
+	public ToolPathCache(long maxBytes, File directory) {
+		if (maxBytes <= 0) {
+			throw new IllegalArgumentException("maxBytes must be greater than 0");
+		}
+		if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+			throw new IllegalArgumentException("Not a directory: " + directory);
+		}
+		this.maxBytes = maxBytes;
+		this.directory = directory;
+	}
+
+	public Polyline2D calculateToolpath(Polyline2D inputPolygon, ToolPathConfig config) {
+		Key key = new Key(inputPolygon, config);
+		Polyline2D toolPath = lookup(key);
+		if (toolPath != null) {
+			return toolPath.copy();
+		}
+		toolPath = ToolPathCalculator.getInstance().calculateToolpath(inputPolygon, config);
+		store(key, toolPath);
+		return toolPath;
+	}
+
+	/*
+	 *  Same as ToolPathCalculator.calculateToolpaths, only the contours missing
+	 *  in the cache are calculated.
+	 */
+	public List<ToolPathResult> calculateToolpaths(List<Contour2D> contours, ToolPathConfig config, ForkJoinPool pool) {
+		return calculateToolpaths(contours, config, pool, PipelineMonitor.NONE);
+	}
+
+	public List<ToolPathResult> calculateToolpaths(List<Contour2D> contours, ToolPathConfig config, ForkJoinPool pool, PipelineMonitor monitor) {
+		return calculateToolpaths(contours, config, pool, monitor, CancellationToken.NONE, null);
+	}
+
+	/*
+	 *  Only the contours that are calculated show up in the monitor, the
+	 *  listener gets the cached results first. A cancelled batch stores
+	 *  nothing.
+	 */
+	public List<ToolPathResult> calculateToolpaths(List<Contour2D> contours, ToolPathConfig config, ForkJoinPool pool, PipelineMonitor monitor,
+			CancellationToken cancel, Consumer<ToolPathResult> listener) {
+		ToolPathResult[] results = new ToolPathResult[contours.size()];
+		Key[] keys = new Key[contours.size()];
+		List<Contour2D> missing = new ArrayList<>();
+		List<Integer> missingIndex = new ArrayList<>();
+		for (int i = 0; i < contours.size(); i++) {
+			Contour2D contour = contours.get(i);
+			keys[i] = new Key(contour.path, config);
+			Polyline2D toolPath = lookup(keys[i]);
+			if (toolPath != null) {
+				results[i] = new ToolPathResult(contour, toolPath.copy());
+				if (listener != null) {
+					listener.accept(results[i]);
+				}
+			} else {
+				missing.add(contour);
+				missingIndex.add(i);
+			}
+		}
+
+		if (!missing.isEmpty()) {
+			List<ToolPathResult> calculated = ToolPathCalculator.getInstance().calculateToolpaths(missing, config, pool, monitor, cancel, listener);
+			for (int k = 0; k < calculated.size(); k++) {
+				int i = missingIndex.get(k);
+				ToolPathResult result = calculated.get(k);
+				if (result.isSuccess()) {
+					store(keys[i], result.toolPath);
+				}
+				results[i] = result;
+			}
+		}
+		return List.of(results);
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		usedBytes = 0;
+	}
+
+	public synchronized long getUsedBytes() {
+		return usedBytes;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/*
+	 *  The disk errors since the last call, for the caller to report.
+	 */
+	public synchronized List<String> takeWarnings() {
+		List<String> taken = warnings;
+		warnings = new ArrayList<>();
+		return taken;
+	}
+
+	private synchronized void warn(String warning) {
+		warnings.add(warning);
+	}
+
+	private Polyline2D lookup(Key key) {
+		synchronized (this) {
+			Polyline2D toolPath = entries.get(key);
+			if (toolPath != null) {
+				hits++;
+				return toolPath;
+			}
+		}
+		Polyline2D toolPath = directory != null ? readFromDisk(key) : null;
+		synchronized (this) {
+			if (toolPath != null) {
+				hits++;
+				put(key, toolPath);
+			} else {
+				misses++;
+			}
+		}
+		return toolPath;
+	}
+
+	private void store(Key key, Polyline2D toolPath) {
+		Polyline2D copy = toolPath.copy();
+		synchronized (this) {
+			put(key, copy);
+		}
+		if (directory != null) {
+			writeToDisk(key, copy);
+		}
+	}
+
+	private void put(Key key, Polyline2D toolPath) {
+		long size = sizeOf(toolPath);
+		if (size > maxBytes) {
+			return;
+		}
+		Polyline2D old = entries.put(key, toolPath);
+		if (old != null) {
+			usedBytes -= sizeOf(old);
+		}
+		usedBytes += size;
+		Iterator<Map.Entry<Key, Polyline2D>> it = entries.entrySet().iterator();
+		while (usedBytes > maxBytes && it.hasNext()) {
+			Map.Entry<Key, Polyline2D> eldest = it.next();
+			usedBytes -= sizeOf(eldest.getValue());
+			it.remove();
+		}
+	}
+
+	private static long sizeOf(Polyline2D toolPath) {
+		return ENTRY_OVERHEAD + toolPath.size() * 16L;
+	}
+
+	private Polyline2D readFromDisk(Key key) {
+		File file = new File(directory, key.fileName());
+		if (!file.isFile()) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			readFully(channel, header);
+			if (header.getInt() != FILE_MAGIC || header.getInt() != ToolPathCalculator.ALGORITHM_VERSION || !key.matches(header)) {
+				return null;
+			}
+			int n = header.getInt();
+			if (n < 0 || n > Integer.MAX_VALUE / 16 || channel.size() != HEADER_SIZE + n * 16L) {
+				return null; // truncated, will be written again
+			}
+			ByteBuffer data = ByteBuffer.allocate(n * 16);
+			readFully(channel, data);
+			double[] coords = new double[n * 2];
+			data.asDoubleBuffer().get(coords);
+			return Polyline2D.wrap(coords, n);
+		} catch (EOFException e) {
+			return null;
+		} catch (IOException e) {
+			warn("Could not read cached toolpath " + file + ": " + e);
+			return null;
+		}
+	}
+
+	private void writeToDisk(Key key, Polyline2D toolPath) {
+		File file = new File(directory, key.fileName());
+		File tmp = null;
+		try {
+			// write to a temporary file first, readers never see partial files
+			tmp = File.createTempFile("toolpath", ".tmp", directory);
+			try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE)) {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				header.putInt(FILE_MAGIC);
+				header.putInt(ToolPathCalculator.ALGORITHM_VERSION);
+				key.writeTo(header);
+				header.putInt(toolPath.size());
+				header.flip();
+				writeFully(channel, header);
+				ByteBuffer data = ByteBuffer.allocate(toolPath.size() * 16);
+				data.asDoubleBuffer().put(toolPath.toArray());
+				writeFully(channel, data);
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			warn("Could not write cached toolpath " + file + ": " + e);
+		} finally {
+			if (tmp != null) {
+				tmp.delete(); // already gone after the move
+			}
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new EOFException();
+			}
+		}
+		buffer.flip();
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private static final class Key {
+		private final long hash1;
+		private final long hash2;
+		private final int points;
+		private final ToolPathConfig config;
+
+		Key(Polyline2D polygon, ToolPathConfig config) {
+			long h1 = 0x243F6A8885A308D3L, h2 = 0x13198A2E03707344L;
+			for (int i = 0; i < polygon.size(); i++) {
+				long x = Double.doubleToLongBits(polygon.getX(i));
+				long y = Double.doubleToLongBits(polygon.getY(i));
+				h1 = (Long.rotateLeft(h1 ^ x, 27) * 0x9E3779B97F4A7C15L) ^ y;
+				h2 = Long.rotateLeft(h2 + x * 0xC2B2AE3D27D4EB4FL, 31) * 0x165667B19E3779F9L + y;
+			}
+			this.hash1 = mix(h1);
+			this.hash2 = mix(h2 ^ 0x5851F42D4C957F2DL);
+			this.points = polygon.size();
+			this.config = config;
+		}
+
+		private static long mix(long h) {
+			h ^= h >>> 33;
+			h *= 0xFF51AFD7ED558CCDL;
+			h ^= h >>> 33;
+			h *= 0xC4CEB9FE1A85EC53L;
+			return h ^ (h >>> 33);
+		}
+
+		String fileName() {
+			return String.format("%016x%016x.v%d.toolpath", hash1 ^ mix(config.hashCode()), hash2, ToolPathCalculator.ALGORITHM_VERSION);
+		}
+
+		void writeTo(ByteBuffer out) {
+			PolygonOffsetter offsetter = config.getOffsetter();
+			out.putLong(hash1);
+			out.putLong(hash2);
+			out.putInt(points);
+			out.putDouble(config.getToolRadius());
+			out.put((byte) (config.isRemoveIntersections() ? 1 : 0));
+			out.putFloat(config.getMaxPathSegmentLength());
+			out.putInt(offsetter.getJoinType().ordinal());
+			out.putDouble(offsetter.getMiterLimit());
+			out.putDouble(offsetter.getArcTolerance());
+		}
+
+		boolean matches(ByteBuffer in) {
+			if (in.getLong() != hash1 || in.getLong() != hash2 || in.getInt() != points) {
+				return false;
+			}
+			double toolRadius = in.getDouble();
+			boolean removeIntersections = in.get() != 0;
+			float maxPathSegmentLength = in.getFloat();
+			int joinType = in.getInt();
+			double miterLimit = in.getDouble();
+			double arcTolerance = in.getDouble();
+			PolygonOffsetter.JoinType[] joinTypes = PolygonOffsetter.JoinType.values();
+			if (!Double.isFinite(toolRadius) || joinType < 0 || joinType >= joinTypes.length || !(miterLimit >= 1) || !(arcTolerance > 0) || !(maxPathSegmentLength > 0)) {
+				return false;
+			}
+			return config.equals(new ToolPathConfig(toolRadius, removeIntersections, maxPathSegmentLength,
+					new PolygonOffsetter(joinTypes[joinType], miterLimit, arcTolerance)));
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Key k && hash1 == k.hash1 && hash2 == k.hash2 && points == k.points && config.equals(k.config);
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (hash1 ^ (hash1 >>> 32)) * 31 + config.hashCode();
+		}
+	}
+}
@@ -1,242 +1,655 @@
-import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
 
+/*
+ *  Calculates toolpaths around contours.
+ *
+ *  The calculator has no state, all parameters come with each call in an
+ *  immutable ToolPathConfig. The shared instance and all methods may be used
+ *  from any number of threads at the same time, as long as the input polylines
+ *  are not modified during the call. Returned polylines are new objects owned
+ *  by the caller.
+ *
+ *  The single stages of the calculation are separate package private
+ *  methods, ToolPathStages opens them to the benchmarks.
+ *
+ *  Long calculations poll a CancellationToken in their loops and stop with a
+ *  CancellationException once it is cancelled.
+ */
 public class ToolPathCalculator {
 
+	// raise whenever the toolpaths for the same input change, stored toolpaths of older versions are not used
+	public static final int ALGORITHM_VERSION = 2;
+
 	private static final double EQUAL_POINT_EPSILON = 0.00001;
-    
-	private static ToolPathCalculator instance = null;
-	
+	private static final int MAX_POCKET_RINGS = 10000;
+	// relative amount the pocket rings are shaken by to find degenerate self intersections
+	private static final double LOOP_SPLIT_SHAKE = 1e-8;
+	// loops poll the cancellation token every 1024 iterations
+	private static final int CANCEL_CHECK_MASK = 1023;
+
+	private static final ToolPathCalculator instance = new ToolPathCalculator();
+
 	public static ToolPathCalculator getInstance() {
-		if (instance == null) {
-			instance = new ToolPathCalculator();
-		}		
 		return instance;
 	}
-    
+
     public List<Point2D> calculateToolpath(List<Point2D> inputPolygon, double toolRadius, boolean removeIntersections, float maxPathSegmentLength) {
-        List<Point2D> offsetPolygon = calculateOffsetPolygon(inputPolygon, toolRadius);
-        List<Point2D> finePolygon = ensureMinimalSegmentLength(offsetPolygon, maxPathSegmentLength);
-        List<Point2D> retPath = new ArrayList<>();
-        if(removeIntersections) {
-            retPath = createAdjustedToolPath(finePolygon);    	        	
+    	ToolPathConfig config = new ToolPathConfig(toolRadius, removeIntersections, maxPathSegmentLength, PolygonOffsetter.DEFAULT);
+    	return calculateToolpath(Polyline2D.of(inputPolygon), config).asList();
+    }
+
+    public Polyline2D calculateToolpath(Polyline2D inputPolygon, ToolPathConfig config) {
+    	return calculateToolpath(inputPolygon, config, PipelineMonitor.NONE, null);
+    }
+
+    public Polyline2D calculateToolpath(Polyline2D inputPolygon, ToolPathConfig config, PipelineMonitor monitor, String name) {
+    	return calculateToolpath(inputPolygon, config, monitor, CancellationToken.NONE, name);
+    }
+
+    /*
+     *  Same as above, every stage is recorded in the monitor under the given
+     *  contour name and the calculation stops once cancel is cancelled.
+     */
+    public Polyline2D calculateToolpath(Polyline2D inputPolygon, ToolPathConfig config, PipelineMonitor monitor, CancellationToken cancel, String name) {
+        cancel.checkCancelled();
+        PipelineMonitor.Span span = monitor.start(PipelineMonitor.Stage.OFFSET, name, inputPolygon.size());
+        Polyline2D offsetPolygon = calculateOffsetPolygon(inputPolygon, config.getToolRadius(), config.getOffsetter());
+        span.stop(offsetPolygon.size());
+
+        cancel.checkCancelled();
+        span = monitor.start(PipelineMonitor.Stage.SUBDIVIDE, name, offsetPolygon.size());
+        Polyline2D finePolygon = ensureMinimalSegmentLength(offsetPolygon, config.getMaxPathSegmentLength(), cancel);
+        span.stop(finePolygon.size());
+
+        Polyline2D retPath;
+        if(config.isRemoveIntersections()) {
+            span = monitor.start(PipelineMonitor.Stage.REMOVE_INTERSECTIONS, name, finePolygon.size());
+            retPath = createAdjustedToolPath(finePolygon, cancel);
+            span.stop(retPath.size());
         } else {
-            retPath = finePolygon;        	
+            retPath = finePolygon;
         }
-        
-        return removeDuplicates( retPath );
-    }
-    
-    private List<Point2D> ensureMinimalSegmentLength(List<Point2D> offsetPolygon, float maxPathSegmentLength) {
-        
-        List<List<Point2D>> segments = new ArrayList<>();
-        for(int i=0; i<offsetPolygon.size(); i++) {
-        	List<Point2D> seg = new ArrayList<>( Arrays.asList(offsetPolygon.get(i), offsetPolygon.get((i+1) % offsetPolygon.size())));
-        	splitSegment(seg, maxPathSegmentLength);
-        	segments.add(seg);
-        }
-        return segments.stream().flatMap(seg -> seg.stream()).toList();
-	}
 
-	private void splitSegment(List<Point2D> seg, float maxPathSegmentLength) {
-		
-		if(seg.size() == 2) {
-			Point2D p1 = seg.get(0);
-			Point2D p2 = seg.get(1);
-			if (p1.distance(p2) > maxPathSegmentLength) {
-				Point2D c = new Point2D.Float((float) (p1.getX()+p2.getX())/2, (float) (p1.getY()+p2.getY())/2);
-				List<Point2D> seg1 = new ArrayList<>(Arrays.asList(p1, c));
-				List<Point2D> seg2 = new ArrayList<>(Arrays.asList(c, p2));
-				splitSegment(seg1, maxPathSegmentLength);
-				splitSegment(seg2, maxPathSegmentLength);
-				seg.clear();
-				seg.addAll(seg1);
-				seg.addAll(seg2);
+        cancel.checkCancelled();
+        span = monitor.start(PipelineMonitor.Stage.REMOVE_DUPLICATES, name, retPath.size());
+        Polyline2D toolPath = removeDuplicates( retPath );
+        span.stop(toolPath.size());
+        return toolPath;
+    }
+
+    public List<ToolPathResult> calculateToolpaths(List<Contour2D> contours, ToolPathConfig config) {
+    	return calculateToolpaths(contours, config, ForkJoinPool.commonPool());
+    }
+
+    public List<ToolPathResult> calculateToolpaths(List<Contour2D> contours, ToolPathConfig config, ForkJoinPool pool) {
+    	return calculateToolpaths(contours, config, pool, PipelineMonitor.NONE);
+    }
+
+    public List<ToolPathResult> calculateToolpaths(List<Contour2D> contours, ToolPathConfig config, ForkJoinPool pool, PipelineMonitor monitor) {
+    	return calculateToolpaths(contours, config, pool, monitor, CancellationToken.NONE, null);
+    }
+
+    /*
+     *  Calculates the toolpaths of independent contours in parallel on the given
+     *  pool. The results are in the same order as the contours, a contour that
+     *  fails is reported in its result instead of aborting the batch. The stages
+     *  of every contour are recorded in the monitor.
+     *
+     *  Cancelling aborts the whole batch with a CancellationException. If
+     *  listener is not null it gets every result as soon as it is done, on the
+     *  thread that calculated it, for progress reporting.
+     */
+    public List<ToolPathResult> calculateToolpaths(List<Contour2D> contours, ToolPathConfig config, ForkJoinPool pool, PipelineMonitor monitor,
+    		CancellationToken cancel, Consumer<ToolPathResult> listener) {
+    	Contour2D[] input = contours.toArray(new Contour2D[0]);
+    	ToolPathResult[] results = new ToolPathResult[input.length];
+    	pool.invoke(new BatchTask(input, results, config, monitor, cancel, listener));
+    	return Arrays.asList(results);
+    }
+
+	private class BatchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Contour2D[] input;
+		private final ToolPathResult[] results;
+		private final int from, to;
+		private final ToolPathConfig config;
+		private final PipelineMonitor monitor;
+		private final CancellationToken cancel;
+		private final Consumer<ToolPathResult> listener;
+
+		BatchTask(Contour2D[] input, ToolPathResult[] results, ToolPathConfig config, PipelineMonitor monitor, CancellationToken cancel,
+				Consumer<ToolPathResult> listener) {
+			this.input = input;
+			this.results = results;
+			this.from = 0;
+			this.to = input.length;
+			this.config = config;
+			this.monitor = monitor;
+			this.cancel = cancel;
+			this.listener = listener;
+		}
+
+		private BatchTask(BatchTask parent, int from, int to) {
+			this.input = parent.input;
+			this.results = parent.results;
+			this.from = from;
+			this.to = to;
+			this.config = parent.config;
+			this.monitor = parent.monitor;
+			this.cancel = parent.cancel;
+			this.listener = parent.listener;
+		}
+
+		@Override
+		protected void compute() {
+			cancel.checkCancelled();
+			if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new BatchTask(this, from, mid), new BatchTask(this, mid, to));
+			} else if (to > from) {
+				Contour2D contour = input[from];
+				try {
+					results[from] = new ToolPathResult(contour, calculateToolpath(contour.path, config, monitor, cancel, contour.name));
+				} catch (CancellationException e) {
+					throw e;
+				} catch (RuntimeException e) {
+					results[from] = new ToolPathResult(contour, e);
+				}
+				if (listener != null) {
+					listener.accept(results[from]);
+				}
 			}
-		} else {
-			throw new IllegalArgumentException("seg parameter should have 2 elements");
 		}
-		return;
 	}
 
-	private List<Point2D> calculateOffsetPolygon(List<Point2D> polygon, double offset) {
-        List<Point2D> newVertices = new ArrayList<>();
-        int n = polygon.size();
-
-        for (int i = 0; i < n; i++) {
-            Point2D p1 = polygon.get(i);
-            Point2D p2 = polygon.get((i + 1) % n);
-            Point2D p3 = polygon.get((i + 2) % n);
+    /*
+     *  Calculates the concentric rings needed to clear the inside of the polygon.
+     *  The first ring is offset inwards by the tool radius, every further ring is
+     *  offset from the previous one by stepover, until a ring collapses.
+     *
+     *  Where the pocket narrows to less than the offset the ring falls apart
+     *  into separate lobes, each lobe is pocketed on its own. Every ring comes
+     *  after the ring it lies in, the rings of one lobe are finished before the
+     *  next lobe is started. Self intersections of the rings are always
+     *  resolved, the removeIntersections setting does not apply to pockets.
+     *
+     *  More than MAX_POCKET_RINGS rings are rejected with an
+     *  IllegalArgumentException, the stepover is too small for the pocket then.
+     */
+    public List<Polyline2D> calculatePocketToolpaths(Polyline2D inputPolygon, double stepover, ToolPathConfig config) {
+    	return calculatePocketToolpaths(inputPolygon, stepover, config, CancellationToken.NONE);
+    }
 
-            Line2D offsetLine1 = createParallelLine(p1, p2, offset);
-            Line2D offsetLine2 = createParallelLine(p2, p3, offset);
+    public List<Polyline2D> calculatePocketToolpaths(Polyline2D inputPolygon, double stepover, ToolPathConfig config, CancellationToken cancel) {
+    	if (!(stepover > 0)) {
+    		throw new IllegalArgumentException("stepover must be greater than 0");
+    	}
+    	List<Polyline2D> rings = new ArrayList<>();
+    	double area = signedArea(inputPolygon);
+    	if (Math.abs(area) < EQUAL_POINT_EPSILON) {
+    		return rings;
+    	}
 
-            Point2D intersection = getIntersectionPoint(offsetLine1, offsetLine2);
-            if (intersection != null) {
-                newVertices.add(intersection);
-            }
-        }
+    	ArrayDeque<Polyline2D> pending = new ArrayDeque<>();
+    	List<Polyline2D> lobes = innerOffsets(inputPolygon, Math.abs(config.getToolRadius()), area, config, cancel);
+    	while (true) {
+    		for (int i = lobes.size() - 1; i >= 0; i--) {
+    			pending.push(lobes.get(i));
+    		}
+    		if (pending.isEmpty()) {
+    			return rings;
+    		}
+    		if (rings.size() == MAX_POCKET_RINGS) {
+    			throw new IllegalArgumentException("stepover " + stepover + " results in more than " + MAX_POCKET_RINGS + " rings");
+    		}
+    		Polyline2D ring = pending.pop();
+    		rings.add(removeDuplicates( ensureMinimalSegmentLength(ring, config.getMaxPathSegmentLength(), cancel) ));
+    		lobes = innerOffsets(ring, stepover, area, config, cancel);
+    	}
+    }
 
-        return newVertices;
+    /*
+     *  Offsets the ring inwards and returns the lobes the offset consists of,
+     *  none once the ring collapses. area is the signed area of the pocket,
+     *  its sign gives the orientation all rings share.
+     */
+    private List<Polyline2D> innerOffsets(Polyline2D ring, double distance, double area, ToolPathConfig config, CancellationToken cancel) {
+    	cancel.checkCancelled();
+    	// the offset follows the right hand normal, which points outwards for counter clockwise polygons
+    	Polyline2D offset = removeDuplicates( calculateOffsetPolygon(ring, -Math.signum(area) * distance, config.getOffsetter()) );
+    	List<Polyline2D> lobes = new ArrayList<>();
+    	if (offset.size() < 3) {
+    		return lobes;
+    	}
+    	SegmentGrid grid = null;
+    	for (Polyline2D loop : splitIntoLoops(offset, cancel)) {
+    		double loopArea = signedArea(loop);
+    		if (loop.size() < 3 || loopArea * area <= 0 || Math.abs(loopArea) < EQUAL_POINT_EPSILON) {
+    			continue; // collapsed or turned inside out
+    		}
+    		if (grid == null) {
+    			grid = new SegmentGrid(ring);
+    		}
+    		if (isInnerOffset(loop, grid, distance)) {
+    			lobes.add(loop);
+    		}
+    	}
+    	return lobes;
     }
 
-    private Line2D createParallelLine(Point2D p1, Point2D p2, double offset) {
-        double dx = p2.getX() - p1.getX();
-        double dy = p2.getY() - p1.getY();
-        double len = Math.sqrt(dx * dx + dy * dy);
-        double offsetX = (dy / len) * offset;
-        double offsetY = -(dx / len) * offset;
+    /*
+     *  Splits a polygon that crosses itself into the simple loops it is made
+     *  of. Both edges are cut at every crossing and the walk along the polygon
+     *  changes over to the other edge there, so each loop is closed at a
+     *  crossing and no loop crosses itself. The loops keep the direction of the
+     *  polygon, parts that were turned inside out come back with the opposite
+     *  orientation. The vertices are kept exactly, the crossings are off by no
+     *  more than LOOP_SPLIT_SHAKE times the size of the polygon.
+     */
+    private List<Polyline2D> splitIntoLoops(Polyline2D polygon, CancellationToken cancel) {
+    	int n = polygon.size();
+    	// the intersector ignores crossings at a vertex and overlapping collinear edges, both are common
+    	// in offsets of axis parallel shapes; on a slightly shaken copy they turn into ordinary crossings
+    	double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+    	for (int i = 0; i < n; i++) {
+    		minX = Math.min(minX, polygon.getX(i));
+    		minY = Math.min(minY, polygon.getY(i));
+    		maxX = Math.max(maxX, polygon.getX(i));
+    		maxY = Math.max(maxY, polygon.getY(i));
+    	}
+    	double shake = LOOP_SPLIT_SHAKE * Math.max(maxX - minX, maxY - minY);
+    	SplittableRandom random = new SplittableRandom(n);
+    	Polyline2D shaken = new Polyline2D(n);
+    	for (int i = 0; i < n; i++) {
+    		shaken.add(polygon.getX(i) + shake * (random.nextDouble() - 0.5), polygon.getY(i) + shake * (random.nextDouble() - 0.5));
+    	}
+    	List<SegmentIntersector.Intersection> found = SegmentIntersector.findIntersections(shaken, cancel);
+    	if (found.isEmpty()) {
+    		return List.of(polygon);
+    	}
+    	cancel.checkCancelled();
+    	int m = found.size();
 
-        Point2D p1Offset = new Point2D.Double(p1.getX() + offsetX, p1.getY() + offsetY);
-        Point2D p2Offset = new Point2D.Double(p2.getX() + offsetX, p2.getY() + offsetY);
+    	// bucket the crossings per edge and sort them along the edge
+    	int[] start = new int[n + 1];
+    	for (SegmentIntersector.Intersection is : found) {
+    		start[is.segmentA + 1]++;
+    		start[is.segmentB + 1]++;
+    	}
+    	for (int i = 0; i < n; i++) {
+    		start[i + 1] += start[i];
+    	}
+    	int[] crossing = new int[2 * m];
+    	double[] params = new double[2 * m];
+    	int[] fill = Arrays.copyOf(start, n);
+    	for (int c = 0; c < m; c++) {
+    		SegmentIntersector.Intersection is = found.get(c);
+    		crossing[fill[is.segmentA]] = c;
+    		params[fill[is.segmentA]++] = is.tA;
+    		crossing[fill[is.segmentB]] = c;
+    		params[fill[is.segmentB]++] = is.tB;
+    	}
+    	for (int i = 0; i < n; i++) {
+    		for (int k = start[i] + 1; k < start[i + 1]; k++) {
+    			int c = crossing[k];
+    			double t = params[k];
+    			int j = k - 1;
+    			while (j >= start[i] && params[j] > t) {
+    				crossing[j + 1] = crossing[j];
+    				params[j + 1] = params[j];
+    				j--;
+    			}
+    			crossing[j + 1] = c;
+    			params[j + 1] = t;
+    		}
+    	}
 
-        return new Line2D.Double(p1Offset, p2Offset);
+    	// the polygon with every crossing inserted twice, once on each edge, linked to its twin
+    	int size = n + 2 * m;
+    	double[] xs = new double[size];
+    	double[] ys = new double[size];
+    	int[] twin = new int[size];
+    	int[] seen = new int[m];
+    	Arrays.fill(twin, -1);
+    	Arrays.fill(seen, -1);
+    	int p = 0;
+    	for (int i = 0; i < n; i++) {
+    		xs[p] = polygon.getX(i);
+    		ys[p++] = polygon.getY(i);
+    		for (int k = start[i]; k < start[i + 1]; k++) {
+    			int c = crossing[k];
+    			xs[p] = found.get(c).x;
+    			ys[p] = found.get(c).y;
+    			if (seen[c] < 0) {
+    				seen[c] = p;
+    			} else {
+    				twin[p] = seen[c];
+    				twin[seen[c]] = p;
+    			}
+    			p++;
+    		}
+    	}
+
+    	// every position has exactly one successor and one predecessor, so the walk always closes
+    	List<Polyline2D> loops = new ArrayList<>();
+    	boolean[] visited = new boolean[size];
+    	for (int s = 0; s < size; s++) {
+    		if (visited[s]) {
+    			continue;
+    		}
+    		Polyline2D loop = new Polyline2D();
+    		int i = s;
+    		do {
+    			visited[i] = true;
+    			// a crossing may come within the shake of a vertex, such slivers would spoil the next offset
+    			if (loop.isEmpty() || !isNear(xs[i], ys[i], loop.getLastX(), loop.getLastY())) {
+    				loop.add(xs[i], ys[i]);
+    			}
+    			i = ((twin[i] >= 0 ? twin[i] : i) + 1) % size;
+    		} while (i != s);
+    		if (loop.size() > 1 && isNear(loop.getX(0), loop.getY(0), loop.getLastX(), loop.getLastY())) {
+    			loop = loop.subPath(0, loop.size() - 1);
+    		}
+    		loops.add(loop);
+    	}
+    	return loops;
     }
 
-    private static Point2D getIntersectionPoint(Line2D line1, Line2D line2) {
-        double x1 = line1.getX1(), y1 = line1.getY1();
-        double x2 = line1.getX2(), y2 = line1.getY2();
-        double x3 = line2.getX1(), y3 = line2.getY1();
-        double x4 = line2.getX2(), y4 = line2.getY2();
+    private static boolean isNear(double x1, double y1, double x2, double y2) {
+    	return Math.abs(x1 - x2) < EQUAL_POINT_EPSILON && Math.abs(y1 - y2) < EQUAL_POINT_EPSILON;
+    }
+
+    /*
+     *  Once the offset exceeds the inner radius of the previous ring the
+     *  offset lines pass each other and form a mirrored or partly inverted
+     *  ring. In a real inner offset every vertex and edge midpoint lies inside
+     *  the previous ring at no less than the offset distance from it. grid
+     *  holds the edges of the previous ring.
+     */
+    private boolean isInnerOffset(Polyline2D ring, SegmentGrid grid, double distance) {
+    	double minDistance = distance * (1 - EQUAL_POINT_EPSILON) - EQUAL_POINT_EPSILON;
+    	int n = ring.size();
+    	for (int i = 0; i < n; i++) {
+    		int j = (i + 1) % n;
+    		double x = ring.getX(i), y = ring.getY(i);
+    		double mx = (x + ring.getX(j)) / 2, my = (y + ring.getY(j)) / 2;
+    		if (!grid.isInside(x, y) || grid.isWithinDistance(x, y, minDistance)
+    				|| !grid.isInside(mx, my) || grid.isWithinDistance(mx, my, minDistance)) {
+    			return false;
+    		}
+    	}
+    	return true;
+    }
 
-        double denom = (y4 - y3) * (x2 - x1) - (x4 - x3) * (y2 - y1);
-        if (denom == 0) return null; // parallel
+    private static double signedArea(Polyline2D polygon) {
+    	int n = polygon.size();
+    	double sum = 0;
+    	for (int i = 0; i < n; i++) {
+    		int j = (i + 1) % n;
+    		sum += polygon.getX(i) * polygon.getY(j) - polygon.getX(j) * polygon.getY(i);
+    	}
+    	return sum / 2;
+    }
 
-        double ua = ((x4 - x3) * (y1 - y3) - (y4 - y3) * (x1 - x3)) / denom;
-        //double ub = ((x2 - x1) * (y1 - y3) - (y2 - y1) * (x1 - x3)) / denom;
+    /*
+     *  Subdivides every edge of the closed polygon into ceil(len/max) parts of
+     *  equal length. Each vertex is written once, the closing edge back to the
+     *  first vertex is implied.
+     */
+    Polyline2D ensureMinimalSegmentLength(Polyline2D offsetPolygon, float maxPathSegmentLength, CancellationToken cancel) {
+        if (!(maxPathSegmentLength > 0)) {
+        	throw new IllegalArgumentException("maxPathSegmentLength must be greater than 0");
+        }
+        int n = offsetPolygon.size();
+        int[] parts = new int[n];
+        long total = 0;
+        for(int i=0; i<n; i++) {
+        	int j = (i+1) % n;
+        	double len = Point2D.distance(offsetPolygon.getX(i), offsetPolygon.getY(i), offsetPolygon.getX(j), offsetPolygon.getY(j));
+        	parts[i] = (int) Math.max(1, Math.min(Integer.MAX_VALUE, Math.ceil(len / maxPathSegmentLength)));
+        	total += parts[i];
+        }
+        if (total > Integer.MAX_VALUE / 2) {
+        	throw new IllegalArgumentException("maxPathSegmentLength " + maxPathSegmentLength + " results in too many points: " + total);
+        }
 
-        double intersectionX = x1 + ua * (x2 - x1);
-        double intersectionY = y1 + ua * (y2 - y1);
+        cancel.checkCancelled();
+        Polyline2D ret = new Polyline2D((int) total);
+        for(int i=0; i<n; i++) {
+        	if ((i & CANCEL_CHECK_MASK) == 0) {
+        		cancel.checkCancelled();
+        	}
+        	int j = (i+1) % n;
+        	double x1 = offsetPolygon.getX(i), y1 = offsetPolygon.getY(i);
+        	double dx = (offsetPolygon.getX(j) - x1) / parts[i];
+        	double dy = (offsetPolygon.getY(j) - y1) / parts[i];
+        	for (int k = 0; k < parts[i]; k++) {
+        		ret.add(x1 + k * dx, y1 + k * dy);
+        	}
+        }
+        return ret;
+	}
 
-        return new Point2D.Double(intersectionX, intersectionY);
-    }
+	Polyline2D calculateOffsetPolygon(Polyline2D polygon, double offset, PolygonOffsetter offsetter) {
+		return offsetter.offset(polygon, offset);
+	}
 
-    private List<Point2D> createAdjustedToolPath(List<Point2D> offsetPolygon) {
-        List<Point2D> adjustedPath = new ArrayList<>();
-        List<Point2D> intersections = new ArrayList<>();
+    Polyline2D createAdjustedToolPath(Polyline2D offsetPolygon, CancellationToken cancel) {
         int n = offsetPolygon.size();
+        if (n == 0) {
+        	return offsetPolygon;
+        }
+
+        List<SegmentIntersector.Intersection> found = SegmentIntersector.findIntersections(offsetPolygon, cancel);
+        cancel.checkCancelled();
+        Polyline2D adjustedPath = new Polyline2D(n + found.size() * 2 + 1);
+        Polyline2D intersections = new Polyline2D(found.size());
+
+        // bucket the crossings per segment: each one is inserted into both segments it belongs to
+        int[] start = new int[n + 1];
+        for (SegmentIntersector.Intersection is : found) {
+        	start[is.segmentA + 1]++;
+        	start[is.segmentB + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+        	start[i + 1] += start[i];
+        }
+        SegmentIntersector.Intersection[] bySegment = new SegmentIntersector.Intersection[start[n]];
+        double[] params = new double[start[n]];
+        int[] fill = Arrays.copyOf(start, n);
+        for (SegmentIntersector.Intersection is : found) {
+        	bySegment[fill[is.segmentA]] = is;
+        	params[fill[is.segmentA]++] = is.tA;
+        	bySegment[fill[is.segmentB]] = is;
+        	params[fill[is.segmentB]++] = is.tB;
+        	intersections.add(is.x, is.y);
+        }
 
         for (int i = 0; i < n; i++) {
-          Point2D p1 = offsetPolygon.get(i);
-          Point2D p2 = offsetPolygon.get((i + 1) % n);
-          
-          adjustedPath.add(p1);
-          
-          List<Point2D> is = getIntersections(p1, p2, offsetPolygon);
-          
-          if(is.size() == 1) {
-        	  adjustedPath.add(is.get(0));
-        	  intersections.add(is.get(0));
-          } else if (is.size() > 1) {
-        	  throw new IllegalArgumentException("Segment with more than 1 intersection is not supported!");
+          adjustedPath.add(offsetPolygon.getX(i), offsetPolygon.getY(i));
+
+          // walk the crossings of this segment in the order they are passed
+          for (int k = start[i] + 1; k < start[i + 1]; k++) {
+        	  SegmentIntersector.Intersection is = bySegment[k];
+        	  double t = params[k];
+        	  int j = k - 1;
+        	  while (j >= start[i] && params[j] > t) {
+        		  bySegment[j + 1] = bySegment[j];
+        		  params[j + 1] = params[j];
+        		  j--;
+        	  }
+        	  bySegment[j + 1] = is;
+        	  params[j + 1] = t;
+          }
+          for (int k = start[i]; k < start[i + 1]; k++) {
+        	  adjustedPath.add(bySegment[k].x, bySegment[k].y);
           }
         }
 
-        adjustedPath.add(offsetPolygon.get(0)); 
+        adjustedPath.add(offsetPolygon.getX(0), offsetPolygon.getY(0));
+
+        cancel.checkCancelled();
+        Polyline2D noDups = removeDuplicates( adjustedPath );
 
-        List<Point2D> noDups = removeDuplicates( adjustedPath );
-        
         // remove inner segments
-        List<Point2D> cleanedPath = removeInnerSegments ( noDups, intersections );
-        
+        Polyline2D cleanedPath = removeInnerSegments ( noDups, intersections );
+
         // close path
         return cleanedPath;
     }
-    
-    private List<Point2D> removeDuplicates( List<Point2D> path) {
-    	List<Point2D> ret = new ArrayList<Point2D>(); 
-    	
-    	Point2D last = null;
-    	for(Point2D p : path) {
-    		if (last == null) {
-    			ret.add(p);
-    		} else {
-    			if (!last.equals(p)) {
-    				ret.add(p);
-    			}
+
+    Polyline2D removeDuplicates( Polyline2D path) {
+    	Polyline2D ret = new Polyline2D(path.size());
+
+    	for(int i=0; i<path.size(); i++) {
+    		double x = path.getX(i), y = path.getY(i);
+    		if (i == 0 || x != path.getX(i-1) || y != path.getY(i-1)) {
+    			ret.add(x, y);
     		}
-    		last = p;
     	}
-    	
+
     	return ret;
     }
-    
-    private List<Point2D> removeInnerSegments(List<Point2D> polygon, List<Point2D> intersections) {
-    	List<Point2D> ret = new ArrayList<Point2D>(); 
+
+    private Polyline2D removeInnerSegments(Polyline2D polygon, Polyline2D intersections) {
+    	Polyline2D ret = new Polyline2D(polygon.size() * 2);
     	boolean outSide = true;
-    	
+    	PointGrid crossings = new PointGrid(intersections, EQUAL_POINT_EPSILON);
+
 	    int n = polygon.size();
-    	for(int i=0; i<n; i++) {  
-			Point2D p1 = polygon.get(i);
-			Point2D p2 = polygon.get((i + 1) % n);
+    	for(int i=0; i<n; i++) {
+    		int j = (i + 1) % n;
     		if(outSide) {
-        		ret.add(p1);
-        		ret.add(p2);
-        		if (containsWithEpsilon(intersections, p2, EQUAL_POINT_EPSILON)) {
+        		ret.add(polygon.getX(i), polygon.getY(i));
+        		ret.add(polygon.getX(j), polygon.getY(j));
+        		if (crossings.contains(polygon.getX(j), polygon.getY(j))) {
         			outSide = false; // now switching over to inside
         		}
     		} else {
-    			if(containsWithEpsilon(intersections, p2, EQUAL_POINT_EPSILON)) {
+    			if(crossings.contains(polygon.getX(j), polygon.getY(j))) {
     				outSide = true;
     			}
     		}
-    		
-    		
+
+
     	}
-		// TODO Auto-generated method stub
 		return ret;
 	}
-    
-    private boolean containsWithEpsilon(List<Point2D> list, Point2D p, double epsilon) {
-    	for (int i=0; i<list.size(); i++) {
-    		if(list.get(i).distance(p) < epsilon) {
-    			return true;
-    		}
-    	}
-    	return false;
-    }
 
-	private List<Point2D> getIntersections(Point2D a, Point2D b, List<Point2D> polygon) {
-    	List<Point2D> ret = new ArrayList<Point2D>();
+	public List<Point2D> removeRedundants(List<Point2D> path) {
+		return removeRedundants(Polyline2D.of(path)).asList();
+	}
 
-	    int n = polygon.size();
-    	for(int i=0; i<n; i++) {
-  	      Point2D p1 = polygon.get(i);
-  	      Point2D p2 = polygon.get((i + 1) % n);
-          Point2D intersection = getIntersectionPoint(new Line2D.Double(a, b), new Line2D.Double(p1, p2));
-          if (intersection != null && isPointOnSegment(a, b, intersection) && isPointOnSegment(p1, p2, intersection)) {
-        	  ret.add(intersection);
-          }
-    		
-    	}
+	/*
+	 *  Removes duplicate points and points on a straight line between their
+	 *  neighbours.
+	 */
+	public Polyline2D removeRedundants(Polyline2D path) {
+		return removeRedundants(path, EQUAL_POINT_EPSILON);
+	}
 
-    	return ret;
-    }
+	/*
+	 *  Douglas-Peucker simplification of a closed polygon: a point is dropped
+	 *  if it lies within tolerance of the line kept in its place. Collinear
+	 *  runs and duplicate points always collapse to their end points.
+	 *
+	 *  The ring is split at the first point and the point farthest from it,
+	 *  both halves are simplified with an explicit stack of index ranges, so
+	 *  the path length is not limited by the call stack.
+	 */
+	public Polyline2D removeRedundants(Polyline2D path, double tolerance) {
+		if (!(tolerance >= 0)) {
+			throw new IllegalArgumentException("tolerance must not be negative");
+		}
+		int n = path.size();
+		if (n < 4) {
+			return removeDuplicates(path);
+		}
 
-    private boolean isPointOnSegment(Point2D p1, Point2D p2, Point2D p) {
-        double minX = Math.min(p1.getX(), p2.getX());
-        double maxX = Math.max(p1.getX(), p2.getX());
-        double minY = Math.min(p1.getY(), p2.getY());
-        double maxY = Math.max(p1.getY(), p2.getY());
+		int far = 0;
+		double farDistance = -1;
+		for (int i = 1; i < n; i++) {
+			double dx = path.getX(i) - path.getX(0), dy = path.getY(i) - path.getY(0);
+			double d = dx * dx + dy * dy;
+			if (d > farDistance) {
+				farDistance = d;
+				far = i;
+			}
+		}
 
-        //return (p.getX() >= minX && p.getX() <= maxX && p.getY() >= minY && p.getY() <= maxY);
-        return (p.getX() > minX && p.getX() < maxX && p.getY() > minY && p.getY() < maxY);
-    }
+		boolean[] keep = new boolean[n];
+		keep[0] = true;
+		keep[far] = true;
+		double toleranceSq = tolerance * tolerance;
+		// ranges are indices into the ring, the end index n stands for point 0
+		int[] stack = new int[64];
+		int top = 0;
+		stack[top++] = 0;
+		stack[top++] = far;
+		stack[top++] = far;
+		stack[top++] = n;
+		while (top > 0) {
+			int last = stack[--top];
+			int first = stack[--top];
+			if (last - first < 2) {
+				continue;
+			}
+			int lastIdx = last % n;
+			double ax = path.getX(first), ay = path.getY(first);
+			double bx = path.getX(lastIdx), by = path.getY(lastIdx);
+			int index = -1;
+			double maxDistance = toleranceSq;
+			for (int i = first + 1; i < last; i++) {
+				double d = segmentDistanceSq(path.getX(i), path.getY(i), ax, ay, bx, by);
+				if (d > maxDistance) {
+					maxDistance = d;
+					index = i;
+				}
+			}
+			if (index < 0) {
+				continue;
+			}
+			keep[index] = true;
+			if (top + 4 > stack.length) {
+				stack = Arrays.copyOf(stack, stack.length * 2);
+			}
+			stack[top++] = first;
+			stack[top++] = index;
+			stack[top++] = index;
+			stack[top++] = last;
+		}
 
-	public List<Point2D> removeRedundants(List<Point2D> path) {
-		List<Point2D> ret = new ArrayList<>();
-		
-		for (int i=0; i<path.size(); i++) {
-			if(i == 0 || i +1 == path.size()) {
-				ret.add(path.get(i));
-			} else {
-				
+		Polyline2D ret = new Polyline2D();
+		for (int i = 0; i < n; i++) {
+			if (keep[i]) {
+				ret.add(path.getX(i), path.getY(i));
 			}
 		}
+		// the first point is kept as split point only, drop it if it is redundant itself
+		int m = ret.size();
+		if (m > 3 && segmentDistanceSq(ret.getX(0), ret.getY(0), ret.getX(m - 1), ret.getY(m - 1), ret.getX(1), ret.getY(1)) <= toleranceSq) {
+			ret = ret.subPath(1, m).copy();
+		}
 		return ret;
 	}
 
+	private static double segmentDistanceSq(double px, double py, double ax, double ay, double bx, double by) {
+		double dx = bx - ax, dy = by - ay;
+		double lenSq = dx * dx + dy * dy;
+		double t = lenSq > 0 ? ((px - ax) * dx + (py - ay) * dy) / lenSq : 0;
+		t = Math.max(0, Math.min(1, t));
+		double ex = ax + t * dx - px, ey = ay + t * dy - py;
+		return ex * ex + ey * ey;
+	}
+
 }
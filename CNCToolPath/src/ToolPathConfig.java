@@ -0,0 +1,98 @@
+/*
+ *  Parameters of a toolpath calculation.
+ *
+ *  toolRadius           - distance between the contour and the toolpath, the
+ *                         sign selects the side (see PolygonOffsetter)
+ *  removeIntersections  - cut off the loops a self intersecting toolpath forms
+ *  maxPathSegmentLength - no toolpath segment is longer than this
+ *  offsetter            - how corners are joined
+ *
+ *  Instances are immutable, the with methods return modified copies. A
+ *  config can be shared between threads and used as a map key.
+ */
+public final class ToolPathConfig {
+
+	public static final ToolPathConfig DEFAULT = new ToolPathConfig(0.8, false, 0.5f, PolygonOffsetter.DEFAULT);
+
+	private final double toolRadius;
+	private final boolean removeIntersections;
+	private final float maxPathSegmentLength;
+	private final PolygonOffsetter offsetter;
+
+	public ToolPathConfig(double toolRadius, boolean removeIntersections, float maxPathSegmentLength, PolygonOffsetter offsetter) {
+		if (Double.isNaN(toolRadius) || Double.isInfinite(toolRadius)) {
+			throw new IllegalArgumentException("toolRadius must be a finite number");
+		}
+		if (!(maxPathSegmentLength > 0)) {
+			throw new IllegalArgumentException("maxPathSegmentLength must be greater than 0");
+		}
+		if (offsetter == null) {
+			throw new IllegalArgumentException("offsetter must not be null");
+		}
+		this.toolRadius = toolRadius;
+		this.removeIntersections = removeIntersections;
+		this.maxPathSegmentLength = maxPathSegmentLength;
+		this.offsetter = offsetter;
+	}
+
+	public double getToolRadius() {
+		return toolRadius;
+	}
+
+	public boolean isRemoveIntersections() {
+		return removeIntersections;
+	}
+
+	public float getMaxPathSegmentLength() {
+		return maxPathSegmentLength;
+	}
+
+	public PolygonOffsetter getOffsetter() {
+		return offsetter;
+	}
+
+	public ToolPathConfig withToolRadius(double toolRadius) {
+		return new ToolPathConfig(toolRadius, removeIntersections, maxPathSegmentLength, offsetter);
+	}
+
+	public ToolPathConfig withRemoveIntersections(boolean removeIntersections) {
+		return new ToolPathConfig(toolRadius, removeIntersections, maxPathSegmentLength, offsetter);
+	}
+
+	public ToolPathConfig withMaxPathSegmentLength(float maxPathSegmentLength) {
+		return new ToolPathConfig(toolRadius, removeIntersections, maxPathSegmentLength, offsetter);
+	}
+
+	public ToolPathConfig withOffsetter(PolygonOffsetter offsetter) {
+		return new ToolPathConfig(toolRadius, removeIntersections, maxPathSegmentLength, offsetter);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof ToolPathConfig c)) {
+			return false;
+		}
+		PolygonOffsetter other = c.offsetter;
+		return Double.compare(toolRadius, c.toolRadius) == 0 && removeIntersections == c.removeIntersections
+				&& Float.compare(maxPathSegmentLength, c.maxPathSegmentLength) == 0 && offsetter.getJoinType() == other.getJoinType()
+				&& Double.compare(offsetter.getMiterLimit(), other.getMiterLimit()) == 0
+				&& Double.compare(offsetter.getArcTolerance(), other.getArcTolerance()) == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		int h = Double.hashCode(toolRadius);
+		h = h * 31 + (removeIntersections ? 1 : 0);
+		h = h * 31 + Float.hashCode(maxPathSegmentLength);
+		h = h * 31 + offsetter.getJoinType().hashCode();
+		h = h * 31 + Double.hashCode(offsetter.getMiterLimit());
+		return h * 31 + Double.hashCode(offsetter.getArcTolerance());
+	}
+
+	@Override
+	public String toString() {
+		return "ToolPathConfig[toolRadius=" + toolRadius + ", removeIntersections=" + removeIntersections + ", maxPathSegmentLength="
+				+ maxPathSegmentLength + ", joinType=" + offsetter.getJoinType() + ", miterLimit=" + offsetter.getMiterLimit()
+				+ ", arcTolerance=" + offsetter.getArcTolerance() + "]";
+	}
+}
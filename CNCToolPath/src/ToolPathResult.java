@@ -0,0 +1,27 @@
+/*
+ *  Outcome of the toolpath calculation for a single contour of a batch.
+ *
+ *  Either toolPath is set or error holds the exception that stopped the
+ *  calculation of this contour. A failing contour does not affect the others.
+ */
+public class ToolPathResult {
+	public final Contour2D contour;
+	public final Polyline2D toolPath;
+	public final RuntimeException error;
+
+	public ToolPathResult(Contour2D contour, Polyline2D toolPath) {
+		this.contour = contour;
+		this.toolPath = toolPath;
+		this.error = null;
+	}
+
+	public ToolPathResult(Contour2D contour, RuntimeException error) {
+		this.contour = contour;
+		this.toolPath = null;
+		this.error = error;
+	}
+
+	public boolean isSuccess() {
+		return error == null;
+	}
+}
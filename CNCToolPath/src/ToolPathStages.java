@@ -0,0 +1,29 @@
+/*
+ *  The single stages of ToolPathCalculator.calculateToolpath, for the
+ *  benchmarks, which measure them one by one.
+ *
+ *  The stages stay package private in the calculator, this class only opens
+ *  them, so renaming a stage fails here at compile time. The stages run
+ *  without cancellation.
+ */
+public final class ToolPathStages {
+
+	private ToolPathStages() {
+	}
+
+	public static Polyline2D calculateOffsetPolygon(Polyline2D polygon, double offset, PolygonOffsetter offsetter) {
+		return ToolPathCalculator.getInstance().calculateOffsetPolygon(polygon, offset, offsetter);
+	}
+
+	public static Polyline2D ensureMinimalSegmentLength(Polyline2D offsetPolygon, float maxPathSegmentLength) {
+		return ToolPathCalculator.getInstance().ensureMinimalSegmentLength(offsetPolygon, maxPathSegmentLength, CancellationToken.NONE);
+	}
+
+	public static Polyline2D createAdjustedToolPath(Polyline2D offsetPolygon) {
+		return ToolPathCalculator.getInstance().createAdjustedToolPath(offsetPolygon, CancellationToken.NONE);
+	}
+
+	public static Polyline2D removeDuplicates(Polyline2D path) {
+		return ToolPathCalculator.getInstance().removeDuplicates(path);
+	}
+}
@@ -0,0 +1,48 @@
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ *  A cancel from any thread must reach every thread polling the token.
+ */
+public class CancellationTokenTest {
+
+	@Test
+	public void cancelIsSeenByAllPollingThreads() throws Exception {
+		CancellationToken token = new CancellationToken();
+		AtomicInteger cancelled = new AtomicInteger();
+		// half of the threads poll until they see the cancel, the other half cancel at once
+		Concurrently.run(t -> () -> {
+			if (t % 2 == 0) {
+				token.cancel();
+				return null;
+			}
+			try {
+				while (true) {
+					token.checkCancelled();
+				}
+			} catch (CancellationException e) {
+				cancelled.incrementAndGet();
+			}
+			return null;
+		});
+		assertEquals(Concurrently.THREADS / 2, cancelled.get());
+		assertTrue(token.isCancelled());
+	}
+
+	@Test
+	public void noneCanNotBeCancelled() throws Exception {
+		Concurrently.run(t -> () -> {
+			CancellationToken.NONE.cancel();
+			return null;
+		});
+		assertFalse(CancellationToken.NONE.isCancelled());
+		assertDoesNotThrow(CancellationToken.NONE::checkCancelled);
+	}
+}
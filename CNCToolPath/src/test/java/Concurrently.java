@@ -0,0 +1,63 @@
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/*
+ *  Runs one task per thread for the concurrency tests. All tasks are
+ *  released at the same moment, so they really run into each other. The
+ *  results come back in thread order, the first failure of any task is
+ *  rethrown as it is.
+ */
+final class Concurrently {
+
+	static final int THREADS = 8;
+
+	private Concurrently() {
+	}
+
+	static <T> List<T> run(IntFunction<Callable<T>> tasks) throws Exception {
+		return run(THREADS, tasks);
+	}
+
+	static <T> List<T> run(int threads, IntFunction<Callable<T>> tasks) throws Exception {
+		CountDownLatch ready = new CountDownLatch(threads);
+		CountDownLatch go = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<T>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				Callable<T> task = tasks.apply(t);
+				futures.add(executor.submit(() -> {
+					ready.countDown();
+					go.await();
+					return task.call();
+				}));
+			}
+			assertTrue(ready.await(10, TimeUnit.SECONDS));
+			go.countDown();
+			List<T> results = new ArrayList<>();
+			for (Future<T> future : futures) {
+				try {
+					results.add(future.get(60, TimeUnit.SECONDS));
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof Exception cause) {
+						throw cause;
+					}
+					throw (Error) e.getCause();
+				}
+			}
+			return results;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,82 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ *  A burst of lines far beyond the limit must never let the Document grow
+ *  beyond twice the limit, and must end with exactly the last lines.
+ */
+public class MessageConsoleTest {
+
+	private static final int LIMIT = 500;
+	private static final int LINES = 100000;
+
+	@Test
+	public void burstKeepsDocumentBounded() throws Exception {
+		JTextArea area = new JTextArea();
+		Document document = area.getDocument();
+		AtomicInteger mostLines = new AtomicInteger();
+		MessageConsole console = new MessageConsole(area);
+		console.setMessageLines(LIMIT);
+		// sees every insert before the trim that follows it
+		document.addDocumentListener(new DocumentListener() {
+			public void insertUpdate(DocumentEvent e) {
+				mostLines.accumulateAndGet(document.getDefaultRootElement().getElementCount(), Math::max);
+			}
+
+			public void removeUpdate(DocumentEvent e) {}
+			public void changedUpdate(DocumentEvent e) {}
+		});
+
+		PrintStream out = new PrintStream(console.new ConsoleOutputStream(null, null), true);
+		for (int i = 0; i < LINES; i++) {
+			out.println("line " + i);
+		}
+
+		String last = "line " + (LINES - 1);
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!last.equals(lastLine(document))) {
+			assertTrue(System.currentTimeMillis() < deadline, "the last line never arrived");
+			Thread.sleep(20);
+		}
+		// let the trim after the last flush run
+		SwingUtilities.invokeAndWait(() -> {});
+		SwingUtilities.invokeAndWait(() -> {});
+
+		assertTrue(mostLines.get() <= 2 * LIMIT + 1, "the Document held " + mostLines.get() + " lines");
+		int[] lines = new int[1];
+		String[] first = new String[1];
+		SwingUtilities.invokeAndWait(() -> {
+			lines[0] = document.getDefaultRootElement().getElementCount();
+			first[0] = line(document, 0);
+		});
+		assertEquals(LIMIT, lines[0]);
+		assertEquals("line " + (LINES - LIMIT), first[0]);
+	}
+
+	private static String lastLine(Document document) throws Exception {
+		String[] line = new String[1];
+		SwingUtilities.invokeAndWait(() -> line[0] = line(document, document.getDefaultRootElement().getElementCount() - 1));
+		return line[0];
+	}
+
+	private static String line(Document document, int index) {
+		Element element = document.getDefaultRootElement().getElement(index);
+		try {
+			return document.getText(element.getStartOffset(), element.getEndOffset() - element.getStartOffset()).strip();
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
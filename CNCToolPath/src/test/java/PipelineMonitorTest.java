@@ -0,0 +1,62 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ *  Spans recorded from several threads at once must all end up in the totals.
+ */
+public class PipelineMonitorTest {
+
+	private static final int SPANS = 2000;
+
+	@Test
+	public void concurrentRecordingKeepsAllTotals() throws Exception {
+		PipelineMonitor monitor = new PipelineMonitor(true, 1000);
+		runConcurrently(monitor);
+
+		long expectedIn = 0;
+		for (int t = 0; t < Concurrently.THREADS; t++) {
+			for (int i = 0; i < SPANS; i++) {
+				expectedIn += t * SPANS + i;
+			}
+		}
+		for (PipelineMonitor.Stage stage : new PipelineMonitor.Stage[] { PipelineMonitor.Stage.OFFSET, PipelineMonitor.Stage.SUBDIVIDE }) {
+			PipelineMonitor.StageTotals totals = monitor.getTotals(stage);
+			assertEquals(Concurrently.THREADS * SPANS / 2, totals.count);
+			assertNotNull(totals.slowest);
+			assertEquals(stage, totals.slowest.stage);
+		}
+		PipelineMonitor.StageTotals offset = monitor.getTotals(PipelineMonitor.Stage.OFFSET);
+		PipelineMonitor.StageTotals subdivide = monitor.getTotals(PipelineMonitor.Stage.SUBDIVIDE);
+		assertEquals(expectedIn, offset.pointsIn + subdivide.pointsIn);
+		assertEquals(2 * expectedIn, offset.pointsOut + subdivide.pointsOut);
+		assertEquals(1000, monitor.getMeasurements().size());
+		assertEquals(0, monitor.getTotals(PipelineMonitor.Stage.READ).count);
+	}
+
+	@Test
+	public void disabledMonitorRecordsNothing() throws Exception {
+		PipelineMonitor monitor = new PipelineMonitor(false, 1000);
+		runConcurrently(monitor);
+		assertEquals(0, monitor.getTotals(PipelineMonitor.Stage.OFFSET).count);
+		assertTrue(monitor.getMeasurements().isEmpty());
+	}
+
+	/*
+	 *  Every thread alternates between OFFSET and SUBDIVIDE spans, span i of
+	 *  thread t goes in with t * SPANS + i points and doubles them.
+	 */
+	private static void runConcurrently(PipelineMonitor monitor) throws Exception {
+		Concurrently.run(thread -> () -> {
+			for (int i = 0; i < SPANS; i++) {
+				PipelineMonitor.Stage stage = (i & 1) == 0 ? PipelineMonitor.Stage.OFFSET : PipelineMonitor.Stage.SUBDIVIDE;
+				int pointsIn = thread * SPANS + i;
+				PipelineMonitor.Span span = monitor.start(stage, "contour " + thread + "/" + i, pointsIn);
+				span.stop(2 * pointsIn);
+			}
+			return null;
+		});
+	}
+}
@@ -0,0 +1,55 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ *  The fast atan2 must stay within the error its documentation gives.
+ */
+public class PolarTransformTest {
+
+	private static final double MAX_ERROR = 2e-8;
+
+	@Test
+	public void fastAtan2IsWithinBoundInAllQuadrants() {
+		Random random = new Random(3);
+		double worst = 0;
+		for (int i = 0; i < 1000000; i++) {
+			double angle = (random.nextDouble() * 2 - 1) * Math.PI;
+			double radius = Math.exp(random.nextDouble() * 40 - 20);
+			worst = Math.max(worst, error(radius * Math.sin(angle), radius * Math.cos(angle)));
+		}
+		// around the axes and diagonals of every quadrant, where the series is evaluated at its ends
+		for (int i = 0; i <= 100000; i++) {
+			double z = i / 100000.0;
+			for (int sx = -1; sx <= 1; sx += 2) {
+				for (int sy = -1; sy <= 1; sy += 2) {
+					worst = Math.max(worst, error(sy * z, sx * 1.0));
+					worst = Math.max(worst, error(sy * 1.0, sx * z));
+				}
+			}
+		}
+		assertTrue(worst < MAX_ERROR, "error " + worst + " radians");
+	}
+
+	@Test
+	public void fastAngleInDegreesIsWithinBound() {
+		Polyline2D path = new Polyline2D();
+		for (int i = 0; i < 3600; i++) {
+			double angle = Math.PI * 2 * i / 3600 + 0.3;
+			path.add(10 * Math.cos(angle), 10 * Math.sin(angle));
+		}
+		double[] strict = new PolarTransform(true, 0).transform(path, true);
+		double[] fast = new PolarTransform(false, 0).transform(path, true);
+		assertEquals(strict.length, fast.length);
+		for (int i = 1; i < strict.length; i += 2) {
+			assertEquals(strict[i], fast[i], Math.toDegrees(MAX_ERROR));
+		}
+	}
+
+	private static double error(double y, double x) {
+		return Math.abs(PolarTransform.fastAtan2(y, x) - Math.atan2(y, x));
+	}
+}
@@ -0,0 +1,47 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ *  Flattened curves must stay within the tolerance of the true curve.
+ */
+public class SVGPathDataParserTest {
+
+	private static final double TOLERANCE = 0.01;
+
+	@Test
+	public void collinearOvershootIsFollowed() {
+		// all control points on the x axis, the curve runs past both ends of the chord
+		Polyline2D path = parse("M0 0 C60 0 -50 0 10 0");
+		double curveMin = Double.MAX_VALUE, curveMax = -Double.MAX_VALUE;
+		for (int i = 0; i <= 100000; i++) {
+			double t = i / 100000.0, u = 1 - t;
+			double x = 3 * u * u * t * 60 + 3 * u * t * t * -50 + t * t * t * 10;
+			curveMin = Math.min(curveMin, x);
+			curveMax = Math.max(curveMax, x);
+		}
+		double pathMin = Double.MAX_VALUE, pathMax = -Double.MAX_VALUE;
+		for (int i = 0; i < path.size(); i++) {
+			pathMin = Math.min(pathMin, path.getX(i));
+			pathMax = Math.max(pathMax, path.getX(i));
+		}
+		assertEquals(curveMin, pathMin, TOLERANCE);
+		assertEquals(curveMax, pathMax, TOLERANCE);
+	}
+
+	@Test
+	public void straightCurveStaysOneSegment() {
+		Polyline2D path = parse("M0 0 C3 0 7 0 10 0");
+		assertEquals(2, path.size());
+	}
+
+	private static Polyline2D parse(String d) {
+		List<Polyline2D> paths = new ArrayList<>();
+		new SVGPathDataParser(TOLERANCE).parse(d, paths::add);
+		assertEquals(1, paths.size());
+		return paths.get(0);
+	}
+}
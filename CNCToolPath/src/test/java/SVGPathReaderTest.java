@@ -0,0 +1,113 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SVGPathReaderTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	public void invalidPathDataIsReadUpToTheErrorAndReported() throws IOException {
+		File file = write("bad.svg", "<svg xmlns=\"http://www.w3.org/2000/svg\">"
+				+ "<path id=\"good\" d=\"M0 0 L10 0 L10 10 Z\"/>"
+				+ "<path id=\"broken\" d=\"M0 0 L20 0 L20 20 L x5 Z\"/></svg>");
+		List<Contour2D> contours = new ArrayList<>();
+		List<String> warnings = SVGPathReader.getInstance().readContoursFromSVGFile(file, contours::add);
+
+		assertEquals(2, contours.size());
+		assertEquals(3, contours.get(1).path.size());
+		assertEquals(1, warnings.size());
+		assertTrue(warnings.get(0).contains("broken"), warnings.get(0));
+	}
+
+	@Test
+	public void listVariantReportsWarnings() throws IOException {
+		File file = write("bad.svg", "<svg xmlns=\"http://www.w3.org/2000/svg\"><path id=\"broken\" d=\"M0 0 L20 0 L20 20 L x5 Z\"/></svg>");
+		ByteArrayOutputStream err = new ByteArrayOutputStream();
+		PrintStream systemErr = System.err;
+		System.setErr(new PrintStream(err, true));
+		try {
+			assertEquals(1, SVGPathReader.getInstance().readContoursFromSVGFile(file).size());
+		} finally {
+			System.setErr(systemErr);
+		}
+		assertTrue(err.toString().startsWith(file + ": ") && err.toString().contains("broken"), err.toString());
+	}
+
+	@Test
+	public void unreadableFileThrows() throws IOException {
+		File missing = dir.resolve("missing.svg").toFile();
+		File malformed = write("malformed.svg", "<svg><path d=\"M0 0 L1 1\"></svg");
+
+		assertThrows(IOException.class, () -> SVGPathReader.getInstance().readContoursFromSVGFile(missing, contour -> {}));
+		assertThrows(UncheckedIOException.class, () -> SVGPathReader.getInstance().readContoursFromSVGFile(missing));
+		assertThrows(UncheckedIOException.class, () -> SVGPathReader.getInstance().readContoursFromSVGFile(malformed));
+		assertThrows(UncheckedIOException.class, () -> SVGPathReader.getInstance().readPolylineFromSVGFile(malformed));
+	}
+
+	/*
+	 *  Readers on several threads share the parser pool, each must get what
+	 *  a single thread reads, including after a file that failed to parse.
+	 */
+	@Test
+	public void concurrentReadsMatchSingleThreaded() throws Exception {
+		List<File> files = new ArrayList<>();
+		for (int f = 0; f < 6; f++) {
+			StringBuilder svg = new StringBuilder("<svg xmlns=\"http://www.w3.org/2000/svg\">");
+			for (int p = 0; p <= f; p++) {
+				svg.append("<path id=\"p").append(p).append("\" d=\"M0 0 L").append(f + 1).append(" 0 Q").append(p + 2).append(" 3 0 ")
+						.append(f + p + 1).append(p == 2 ? " L x" : "").append(" Z\"/>");
+			}
+			files.add(write("file" + f + ".svg", svg.append("</svg>").toString()));
+		}
+		files.add(write("malformed.svg", "<svg><path d=\"M0 0 L1 1\"></svg"));
+		List<String> expected = new ArrayList<>();
+		for (File file : files) {
+			expected.add(read(file));
+		}
+
+		List<List<String>> results = Concurrently.run(t -> () -> {
+			List<String> got = new ArrayList<>();
+			for (int round = 0; round < 20; round++) {
+				for (File file : files) {
+					got.add(read(file));
+				}
+			}
+			return got;
+		});
+		for (List<String> got : results) {
+			for (int i = 0; i < got.size(); i++) {
+				assertEquals(expected.get(i % files.size()), got.get(i));
+			}
+		}
+	}
+
+	private static String read(File file) {
+		StringBuilder text = new StringBuilder();
+		try {
+			List<String> warnings = SVGPathReader.getInstance().readContoursFromSVGFile(file,
+					contour -> text.append(contour.name).append(' ').append(contour.path).append('\n'));
+			return text.append(warnings).toString();
+		} catch (IOException e) {
+			return "failed";
+		}
+	}
+
+	private File write(String name, String content) throws IOException {
+		return Files.writeString(dir.resolve(name), content).toFile();
+	}
+}
@@ -0,0 +1,139 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ *  The grid must give the same answers as testing every edge.
+ */
+public class SegmentGridTest {
+
+	@Test
+	public void randomPolygonMatchesBruteForce() {
+		Random random = new Random(42);
+		for (int round = 0; round < 20; round++) {
+			int n = 3 + random.nextInt(300);
+			Polyline2D polygon = new Polyline2D(n);
+			for (int i = 0; i < n; i++) {
+				// every other round on a coarse lattice, so vertices and edges fall on cell borders
+				if ((round & 1) == 0) {
+					polygon.add(random.nextInt(20), random.nextInt(20));
+				} else {
+					polygon.add(random.nextDouble() * 100, random.nextDouble() * 40);
+				}
+			}
+			compare(polygon, random);
+		}
+	}
+
+	@Test
+	public void longDiagonalEdgesMatchBruteForce() {
+		// a zig zag whose edges cross the whole grid, their bounding boxes cover nearly every cell
+		Polyline2D polygon = new Polyline2D();
+		for (int i = 0; i < 200; i++) {
+			polygon.add(i, (i & 1) == 0 ? 0 : 100);
+		}
+		polygon.add(199, 200);
+		polygon.add(0, 200);
+		compare(polygon, new Random(7));
+	}
+
+	private static void compare(Polyline2D polygon, Random random) {
+		SegmentGrid grid = new SegmentGrid(polygon);
+		int n = polygon.size();
+		double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+		for (int i = 0; i < n; i++) {
+			minX = Math.min(minX, polygon.getX(i));
+			minY = Math.min(minY, polygon.getY(i));
+			maxX = Math.max(maxX, polygon.getX(i));
+			maxY = Math.max(maxY, polygon.getY(i));
+		}
+		for (int q = 0; q < 500; q++) {
+			double x = minX - 1 + random.nextDouble() * (maxX - minX + 2);
+			double y = minY - 1 + random.nextDouble() * (maxY - minY + 2);
+			if ((q & 3) == 0) {
+				x = vertexCoordinate(polygon, random, true);
+				y = vertexCoordinate(polygon, random, false) + 0.5;
+			}
+			double distance = random.nextDouble() * 5;
+			assertEquals(isInside(polygon, x, y), grid.isInside(x, y), "inside " + x + ", " + y);
+			assertEquals(isWithinDistance(polygon, x, y, distance), grid.isWithinDistance(x, y, distance), "distance " + x + ", " + y);
+
+			int[] reported = new int[n];
+			double w = random.nextDouble() * 10, h = random.nextDouble() * 10;
+			grid.forEachCandidate(x, y, x + w, y + h, i -> {
+				reported[i]++;
+				return true;
+			});
+			for (int i = 0; i < n; i++) {
+				assertTrue(reported[i] <= 1, "edge " + i + " reported " + reported[i] + " times");
+				if (crossesBox(polygon, i, x, y, x + w, y + h)) {
+					assertEquals(1, reported[i], "edge " + i + " passes the box");
+				}
+			}
+		}
+	}
+
+	private static double vertexCoordinate(Polyline2D polygon, Random random, boolean x) {
+		int i = random.nextInt(polygon.size());
+		return x ? polygon.getX(i) : polygon.getY(i);
+	}
+
+	private static boolean isInside(Polyline2D polygon, double x, double y) {
+		boolean inside = false;
+		int n = polygon.size();
+		for (int i = 0; i < n; i++) {
+			int j = (i + 1) % n;
+			double yi = polygon.getY(i), yj = polygon.getY(j);
+			if ((yi > y) != (yj > y)) {
+				double xi = polygon.getX(i), xj = polygon.getX(j);
+				if (x < (xj - xi) * (y - yi) / (yj - yi) + xi) {
+					inside = !inside;
+				}
+			}
+		}
+		return inside;
+	}
+
+	private static boolean isWithinDistance(Polyline2D polygon, double x, double y, double distance) {
+		int n = polygon.size();
+		for (int i = 0; i < n; i++) {
+			int j = (i + 1) % n;
+			double ax = polygon.getX(i), ay = polygon.getY(i);
+			double dx = polygon.getX(j) - ax, dy = polygon.getY(j) - ay;
+			double lenSq = dx * dx + dy * dy;
+			double t = lenSq > 0 ? Math.max(0, Math.min(1, ((x - ax) * dx + (y - ay) * dy) / lenSq)) : 0;
+			double ex = ax + t * dx - x, ey = ay + t * dy - y;
+			if (ex * ex + ey * ey < distance * distance) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 *  Liang-Barsky clipping of edge i against the box.
+	 */
+	private static boolean crossesBox(Polyline2D polygon, int i, double x0, double y0, double x1, double y1) {
+		int j = (i + 1) % polygon.size();
+		double ax = polygon.getX(i), ay = polygon.getY(i);
+		double dx = polygon.getX(j) - ax, dy = polygon.getY(j) - ay;
+		double[] p = { -dx, dx, -dy, dy };
+		double[] q = { ax - x0, x1 - ax, ay - y0, y1 - ay };
+		double t0 = 0, t1 = 1;
+		for (int k = 0; k < 4; k++) {
+			if (p[k] == 0) {
+				if (q[k] < 0) {
+					return false;
+				}
+			} else if (p[k] < 0) {
+				t0 = Math.max(t0, q[k] / p[k]);
+			} else {
+				t1 = Math.min(t1, q[k] / p[k]);
+			}
+		}
+		return t0 <= t1;
+	}
+}
@@ -0,0 +1,113 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ *  The sweep must report the same crossings as testing every pair of edges,
+ *  each one once.
+ */
+public class SegmentIntersectorTest {
+
+	@Test
+	public void randomPolygonMatchesBruteForce() {
+		// every edge overlaps most others in x and y, so nearly all of them are active at once
+		Random random = new Random(11);
+		Polyline2D polygon = new Polyline2D(400);
+		for (int i = 0; i < 400; i++) {
+			polygon.add(random.nextDouble() * 100, random.nextDouble() * 100);
+		}
+		compare(polygon);
+	}
+
+	@Test
+	public void stackedLongEdgesMatchBruteForce() {
+		// a comb of long horizontal teeth, all cut by the sweep line, crossed by a zig zag
+		Polyline2D polygon = new Polyline2D();
+		for (int i = 0; i < 300; i++) {
+			polygon.add(i % 2 == 0 ? 0 : 1000, i);
+			polygon.add(i % 2 == 0 ? 1000 : 0, i);
+		}
+		for (int i = 0; i < 100; i++) {
+			polygon.add(999.5 - i * 9.9, i % 2 == 0 ? 300.5 : -0.5);
+		}
+		compare(polygon);
+	}
+
+	@Test
+	public void spikyStarMatchesBruteForce() {
+		// long spikes through the centre, every spike crosses every other one
+		Polyline2D polygon = new Polyline2D();
+		int spikes = 150;
+		for (int i = 0; i < spikes; i++) {
+			double angle = Math.PI * 2 * i / spikes;
+			polygon.add(100 * Math.cos(angle), 100 * Math.sin(angle));
+			polygon.add(-100 * Math.cos(angle + 0.01), -100 * Math.sin(angle + 0.01));
+		}
+		compare(polygon);
+	}
+
+	@Test
+	public void largeCircleIsSortedQuickly() {
+		// starting at the rightmost vertex the smallest x of the edges first falls and then rises,
+		// the order that made a quicksort with the middle element as pivot quadratic
+		int n = 1000000;
+		Polyline2D circle = new Polyline2D(n);
+		for (int i = 0; i < n; i++) {
+			double angle = Math.PI * 2 * i / n;
+			circle.add(100 * Math.cos(angle), 100 * Math.sin(angle));
+		}
+		assertTimeout(Duration.ofSeconds(3), () -> assertTrue(SegmentIntersector.findIntersections(circle).isEmpty()));
+	}
+
+	private static void compare(Polyline2D polygon) {
+		Set<Long> found = new HashSet<>();
+		for (SegmentIntersector.Intersection is : SegmentIntersector.findIntersections(polygon)) {
+			assertTrue(is.segmentA < is.segmentB);
+			assertTrue(found.add(pair(is.segmentA, is.segmentB)), "reported twice: " + is.segmentA + " " + is.segmentB);
+		}
+		Set<Long> expected = bruteForce(polygon);
+		assertTrue(expected.size() > 1000, "too few crossings to be a dense test: " + expected.size());
+		assertEquals(expected, found);
+	}
+
+	/*
+	 *  Every pair of edges that are not neighbours, crossing strictly inside
+	 *  both. The random inputs keep clear of the tolerances of the sweep.
+	 */
+	private static Set<Long> bruteForce(Polyline2D polygon) {
+		int n = polygon.size();
+		Set<Long> pairs = new HashSet<>();
+		for (int a = 0; a < n; a++) {
+			for (int b = a + 2; b < n; b++) {
+				if (a == 0 && b == n - 1) {
+					continue;
+				}
+				double px = polygon.getX(a), py = polygon.getY(a);
+				double rx = polygon.getX(a + 1) - px, ry = polygon.getY(a + 1) - py;
+				double qx = polygon.getX(b), qy = polygon.getY(b);
+				double sx = polygon.getX((b + 1) % n) - qx, sy = polygon.getY((b + 1) % n) - qy;
+				double denom = rx * sy - ry * sx;
+				if (denom == 0) {
+					continue;
+				}
+				double t = ((qx - px) * sy - (qy - py) * sx) / denom;
+				double u = ((qx - px) * ry - (qy - py) * rx) / denom;
+				if (t > 0 && t < 1 && u > 0 && u < 1) {
+					pairs.add(pair(a, b));
+				}
+			}
+		}
+		return pairs;
+	}
+
+	private static long pair(int a, int b) {
+		return (long) a << 32 | b;
+	}
+}
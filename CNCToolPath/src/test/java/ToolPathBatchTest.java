@@ -0,0 +1,81 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ToolPathBatchTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	public void anyDirectoriesAlsoMatchesNone() throws IOException {
+		Path top = touch("jobs/top.svg");
+		Path nested = touch("jobs/a/nested.svg");
+		Path deep = touch("jobs/a/b/deep.svg");
+		touch("jobs/a/other.txt");
+
+		String jobs = dir.resolve("jobs").toString().replace('\\', '/');
+		assertEquals(List.of(deep, nested, top), ToolPathBatch.glob(jobs + "/**/*.svg"));
+		assertEquals(List.of(deep, nested), ToolPathBatch.glob(jobs + "/a/**/*.svg"));
+		assertEquals(List.of(deep), ToolPathBatch.glob(jobs + "/**/b/**/*.svg"));
+	}
+
+	@Test
+	public void globVariants() {
+		assertEquals(List.of("*.svg"), ToolPathBatch.globVariants("*.svg"));
+		assertEquals(List.of("**/*.svg", "*.svg"), ToolPathBatch.globVariants("**/*.svg"));
+		assertEquals(List.of("**/a/**/*.svg", "a/**/*.svg", "a/*.svg", "**/a/*.svg"), ToolPathBatch.globVariants("**/a/**/*.svg"));
+	}
+
+	@Test
+	public void invalidOptionsAreRejectedUpFront() {
+		assertThrows(IllegalArgumentException.class, () -> parse("--decimals", "99", "x.svg"));
+		assertThrows(IllegalArgumentException.class, () -> parse("--decimals", "2.5", "x.svg"));
+		assertThrows(IllegalArgumentException.class, () -> parse("--safe-height", "-1", "x.svg"));
+		assertThrows(IllegalArgumentException.class, () -> parse("--feed", "0", "x.svg"));
+		assertThrows(IllegalArgumentException.class, () -> parse("--simplify", "-0.1", "x.svg"));
+		assertThrows(IllegalArgumentException.class, () -> parse("--threads", "1.5", "x.svg"));
+		parse("--decimals", "4", "--safe-height", "5", "--depth", "-1", "x.svg");
+	}
+
+	@Test
+	public void fileWithFailedContourFailsAndIsNotWritten() throws IOException {
+		Path good = square("good.svg", 1);
+		// the subdivided outline of this one has too many points
+		Path bad = square("bad.svg", 1e6);
+		ToolPathBatch batch = new ToolPathBatch();
+		batch.parseArguments(new String[] { "--max-segment", "0.001", dir.toString() });
+
+		assertFalse(batch.run());
+		assertTrue(Files.exists(ToolPathBatch.outputFile(good)));
+		assertFalse(Files.exists(ToolPathBatch.outputFile(bad)));
+		try (Stream<Path> files = Files.list(dir)) {
+			assertEquals(0, files.filter(file -> file.toString().endsWith(".tmp")).count());
+		}
+	}
+
+	private static void parse(String... args) {
+		new ToolPathBatch().parseArguments(args);
+	}
+
+	private Path square(String name, double size) throws IOException {
+		return Files.writeString(dir.resolve(name), "<svg xmlns=\"http://www.w3.org/2000/svg\"><path id=\"square\" d=\"M0 0 L" + size + " 0 L"
+				+ size + " " + size + " L0 " + size + " Z\"/></svg>");
+	}
+
+	private Path touch(String name) throws IOException {
+		Path file = dir.resolve(name);
+		Files.createDirectories(file.getParent());
+		return Files.writeString(file, "<svg/>");
+	}
+}
@@ -0,0 +1,128 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/*
+ *  Several threads share one cache that is too small for all contours, so
+ *  lookups, stores and evictions run into each other. Every toolpath handed
+ *  out must still be the one the calculator produces.
+ */
+public class ToolPathCacheTest {
+
+	private static final int CALLS = 300;
+	private static final int SHAPES = 24;
+
+	private static final ToolPathConfig CONFIG = ToolPathConfig.DEFAULT;
+
+	@Test
+	public void concurrentGetPutAndEvict() throws Exception {
+		Polyline2D[] shapes = new Polyline2D[SHAPES];
+		double[][] expected = new double[SHAPES][];
+		for (int i = 0; i < SHAPES; i++) {
+			shapes[i] = square(5 + i);
+			expected[i] = ToolPathCalculator.getInstance().calculateToolpath(shapes[i], CONFIG).toArray();
+		}
+		// room for a few toolpaths only
+		long maxBytes = 8 * (200 + expected[SHAPES / 2].length * 8L);
+		ToolPathCache cache = new ToolPathCache(maxBytes, null);
+
+		Concurrently.run(t -> {
+			Random random = new Random(t);
+			return () -> {
+				for (int k = 0; k < CALLS; k++) {
+					// mostly a small hot set, so there are hits as well as evictions
+					int i = random.nextInt(4) == 0 ? random.nextInt(SHAPES) : random.nextInt(4);
+					Polyline2D toolPath = cache.calculateToolpath(shapes[i], CONFIG);
+					assertArrayEquals(expected[i], toolPath.toArray());
+					// callers own what they get, this must not reach the cache
+					toolPath.set(0, Double.NaN, Double.NaN);
+				}
+				return null;
+			};
+		});
+
+		assertEquals(Concurrently.THREADS * CALLS, cache.getHits() + cache.getMisses());
+		assertTrue(cache.getHits() > 0);
+		assertTrue(cache.getUsedBytes() <= maxBytes);
+		assertTrue(cache.size() > 0 && cache.size() < SHAPES);
+		for (int i = 0; i < SHAPES; i++) {
+			assertArrayEquals(expected[i], cache.calculateToolpath(shapes[i], CONFIG).toArray());
+		}
+	}
+
+	@Test
+	public void concurrentBatches() throws Exception {
+		List<Contour2D> contours = new ArrayList<>();
+		for (int i = 0; i < SHAPES; i++) {
+			contours.add(new Contour2D("square " + i, square(5 + i), null));
+		}
+		List<ToolPathResult> expected = ToolPathCalculator.getInstance().calculateToolpaths(contours, CONFIG);
+		ToolPathCache cache = new ToolPathCache();
+		ForkJoinPool pool = new ForkJoinPool(4);
+
+		try {
+			for (List<ToolPathResult> results : Concurrently.run(t -> () -> cache.calculateToolpaths(contours, CONFIG, pool))) {
+				assertEquals(SHAPES, results.size());
+				for (int i = 0; i < SHAPES; i++) {
+					assertTrue(results.get(i).isSuccess());
+					assertEquals(contours.get(i), results.get(i).contour);
+					assertArrayEquals(expected.get(i).toolPath.toArray(), results.get(i).toolPath.toArray());
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		assertEquals(SHAPES, cache.size());
+	}
+
+	@Test
+	public void diskEntryOfOtherAlgorithmVersionIsAMiss(@TempDir Path dir) throws IOException {
+		Polyline2D shape = square(7);
+		double[] expected = ToolPathCalculator.getInstance().calculateToolpath(shape, CONFIG).toArray();
+		new ToolPathCache(ToolPathCache.DEFAULT_MAX_BYTES, dir.toFile()).calculateToolpath(shape, CONFIG);
+		List<Path> files;
+		try (Stream<Path> list = Files.list(dir)) {
+			files = list.toList();
+		}
+		assertEquals(1, files.size(), "no temporary file is left: " + files);
+		Path file = files.get(0);
+		assertTrue(file.getFileName().toString().endsWith(".v" + ToolPathCalculator.ALGORITHM_VERSION + ".toolpath"), file.toString());
+
+		ToolPathCache reread = new ToolPathCache(ToolPathCache.DEFAULT_MAX_BYTES, dir.toFile());
+		assertArrayEquals(expected, reread.calculateToolpath(shape, CONFIG).toArray());
+		assertEquals(1, reread.getHits());
+
+		// the same name written by another version of the calculator
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.allocate(4).putInt(0, ToolPathCalculator.ALGORITHM_VERSION - 1), 4);
+		}
+		ToolPathCache stale = new ToolPathCache(ToolPathCache.DEFAULT_MAX_BYTES, dir.toFile());
+		assertArrayEquals(expected, stale.calculateToolpath(shape, CONFIG).toArray());
+		assertEquals(0, stale.getHits());
+		assertTrue(stale.takeWarnings().isEmpty());
+	}
+
+	private static Polyline2D square(double size) {
+		Polyline2D square = new Polyline2D(4);
+		square.add(0, 0);
+		square.add(size, 0);
+		square.add(size, size);
+		square.add(0, size);
+		return square;
+	}
+}
@@ -0,0 +1,127 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class ToolPathCalculatorTest {
+
+	private static final ToolPathConfig CONFIG = ToolPathConfig.DEFAULT;
+
+	/*
+	 *  Two 20x20 squares joined by a 4 wide neck. The rings split in the neck,
+	 *  both squares must still be cleared down to their centre.
+	 */
+	@Test
+	public void pocketKeepsClearingEveryLobe() {
+		Polyline2D dumbbell = polygon(0, 0, 20, 0, 20, 8, 30, 8, 30, 0, 50, 0, 50, 20, 30, 20, 30, 12, 20, 12, 20, 20, 0, 20);
+		List<Polyline2D> rings = ToolPathCalculator.getInstance().calculatePocketToolpaths(dumbbell, 1, CONFIG);
+
+		int left = 0, right = 0;
+		double leftInnermost = Double.MAX_VALUE, rightInnermost = Double.MAX_VALUE;
+		for (Polyline2D ring : rings) {
+			double[] box = bounds(ring);
+			if (box[2] < 20) {
+				left++;
+				leftInnermost = Math.min(leftInnermost, box[2] - box[0]);
+			} else if (box[0] > 30) {
+				right++;
+				rightInnermost = Math.min(rightInnermost, box[2] - box[0]);
+			}
+		}
+		assertEquals(left, right);
+		assertTrue(left >= 7, "rings in the left lobe: " + left);
+		assertTrue(leftInnermost < 3, "innermost left ring is " + leftInnermost + " wide");
+		assertTrue(rightInnermost < 3, "innermost right ring is " + rightInnermost + " wide");
+	}
+
+	@Test
+	public void pocketSplitsInOrder() {
+		Polyline2D dumbbell = polygon(0, 0, 20, 0, 20, 8, 30, 8, 30, 0, 50, 0, 50, 20, 30, 20, 30, 12, 20, 12, 20, 20, 0, 20);
+		List<Polyline2D> rings = ToolPathCalculator.getInstance().calculatePocketToolpaths(dumbbell, 1, CONFIG);
+
+		// the rings of one lobe come one after the other, each inside the one before
+		double[] outer = bounds(rings.get(0));
+		assertTrue(outer[0] < 20 && outer[2] > 30, "the first ring spans both lobes");
+		for (int i = 1; i < rings.size(); i++) {
+			double[] previous = bounds(rings.get(i - 1));
+			double[] box = bounds(rings.get(i));
+			boolean lobeChanged = (previous[2] < 20) != (box[2] < 20);
+			if (!lobeChanged && previous[0] <= box[0]) {
+				assertTrue(box[0] > previous[0] && box[1] > previous[1] && box[2] < previous[2] && box[3] < previous[3],
+						"ring " + i + " lies inside ring " + (i - 1));
+			}
+		}
+	}
+
+	@Test
+	public void pocketWithTooManyRingsIsRejected() {
+		Polyline2D square = polygon(0, 0, 1000, 0, 1000, 1000, 0, 1000);
+		ToolPathConfig coarse = CONFIG.withMaxPathSegmentLength(10000f);
+		assertThrows(IllegalArgumentException.class,
+				() -> ToolPathCalculator.getInstance().calculatePocketToolpaths(square, 0.01, coarse));
+	}
+
+	/*
+	 *  The shared instance is used from several threads at once, every
+	 *  toolpath and pocket must be the one a single thread gets.
+	 */
+	@Test
+	public void concurrentCallsMatchSingleThreaded() throws Exception {
+		Random random = new Random(5);
+		int shapes = 12;
+		Polyline2D[] stars = new Polyline2D[shapes];
+		for (int k = 0; k < shapes; k++) {
+			int n = 5 + random.nextInt(40);
+			stars[k] = new Polyline2D(n);
+			for (int i = 0; i < n; i++) {
+				double angle = Math.PI * 2 * i / n;
+				double radius = i % 2 == 0 ? 10 : 3 + random.nextDouble() * 5;
+				stars[k].add(radius * Math.cos(angle), radius * Math.sin(angle));
+			}
+		}
+		ToolPathConfig outward = CONFIG.withToolRadius(1.5f).withRemoveIntersections(true).withMaxPathSegmentLength(0.3f);
+		ToolPathConfig pocket = CONFIG.withToolRadius(0.5f).withRemoveIntersections(true);
+		String[] expected = new String[shapes];
+		for (int k = 0; k < shapes; k++) {
+			expected[k] = calculate(stars[k], outward, pocket);
+		}
+
+		List<String[]> results = Concurrently.run(t -> () -> {
+			String[] got = new String[shapes];
+			// every thread starts at another shape, so different shapes run at the same time
+			for (int i = 0; i < shapes; i++) {
+				int k = (i + t) % shapes;
+				got[k] = calculate(stars[k], outward, pocket);
+			}
+			return got;
+		});
+		for (String[] got : results) {
+			assertArrayEquals(expected, got);
+		}
+	}
+
+	private static String calculate(Polyline2D shape, ToolPathConfig outward, ToolPathConfig pocket) {
+		ToolPathCalculator calculator = ToolPathCalculator.getInstance();
+		return calculator.calculateToolpath(shape, outward) + " " + calculator.calculatePocketToolpaths(shape, 0.4, pocket);
+	}
+
+	private static Polyline2D polygon(double... coords) {
+		return Polyline2D.wrap(coords, coords.length / 2);
+	}
+
+	private static double[] bounds(Polyline2D ring) {
+		double[] box = { Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+		for (int i = 0; i < ring.size(); i++) {
+			box[0] = Math.min(box[0], ring.getX(i));
+			box[1] = Math.min(box[1], ring.getY(i));
+			box[2] = Math.max(box[2], ring.getX(i));
+			box[3] = Math.max(box[3], ring.getY(i));
+		}
+		return box;
+	}
+}
@@ -0,0 +1,112 @@
+package cnctoolpath.benchmarks;
+
+import java.util.Locale;
+
+/*
+ *  Synthetic closed outlines of a given number of points, as interleaved
+ *  coordinate arrays [x0, y0, x1, y1, ...] in counter clockwise order. All
+ *  shapes fit into a circle of SIZE around the origin.
+ *
+ *  circle - convex, no self intersections in any offset; it starts at its
+ *           rightmost point, so the smallest x of the edges falls and then
+ *           rises, an order naive sorts are slow on
+ *  star   - STAR_SPIKES sharp spikes, every second corner concave so outward
+ *           offsets form loops; the points are spread along the edges
+ *  glyph  - a letter like outline: squarish body with round shoulders and
+ *           three deep concave notches, a mix of smooth curves and corners
+ */
+final class Shapes {
+
+	static final double SIZE = 100;
+	static final int STAR_SPIKES = 12;
+
+	private Shapes() {
+	}
+
+	static double[] create(String shape, int points) {
+		switch (shape) {
+		case "circle":
+			return circle(points);
+		case "star":
+			return star(points);
+		case "glyph":
+			return glyph(points);
+		default:
+			throw new IllegalArgumentException("Unknown shape: " + shape);
+		}
+	}
+
+	static double[] circle(int points) {
+		double[] coords = new double[points * 2];
+		for (int i = 0; i < points; i++) {
+			double t = 2 * Math.PI * i / points;
+			coords[i * 2] = SIZE * Math.cos(t);
+			coords[i * 2 + 1] = SIZE * Math.sin(t);
+		}
+		return coords;
+	}
+
+	static double[] star(int points) {
+		int corners = STAR_SPIKES * 2;
+		double[] coords = new double[points * 2];
+		for (int i = 0; i < points; i++) {
+			// position along the outline in corners, the fraction walks along an edge
+			double u = (double) i * corners / points;
+			int c = (int) u;
+			double f = u - c;
+			double r0 = c % 2 == 0 ? SIZE : SIZE * 0.4;
+			double r1 = c % 2 == 0 ? SIZE * 0.4 : SIZE;
+			double t0 = 2 * Math.PI * c / corners, t1 = 2 * Math.PI * (c + 1) / corners;
+			coords[i * 2] = (1 - f) * r0 * Math.cos(t0) + f * r1 * Math.cos(t1);
+			coords[i * 2 + 1] = (1 - f) * r0 * Math.sin(t0) + f * r1 * Math.sin(t1);
+		}
+		return coords;
+	}
+
+	static double[] glyph(int points) {
+		double[] coords = new double[points * 2];
+		for (int i = 0; i < points; i++) {
+			double t = 2 * Math.PI * i / points;
+			double notch = Math.pow(Math.max(0, Math.cos(3 * t)), 8);
+			double r = SIZE * (0.8 + 0.2 * Math.abs(Math.cos(2 * t))) * (1 - 0.45 * notch);
+			coords[i * 2] = r * Math.cos(t);
+			coords[i * 2 + 1] = r * Math.sin(t);
+		}
+		return coords;
+	}
+
+	static double perimeter(double[] coords) {
+		int n = coords.length / 2;
+		double sum = 0;
+		for (int i = 0; i < n; i++) {
+			int j = (i + 1) % n;
+			sum += Math.hypot(coords[j * 2] - coords[i * 2], coords[j * 2 + 1] - coords[i * 2 + 1]);
+		}
+		return sum;
+	}
+
+	/*
+	 *  SVG path data for the outline. Circle and star are written as lines,
+	 *  the glyph as a Catmull-Rom spline of cubic curves through its points,
+	 *  like the outlines of a converted font.
+	 */
+	static String svgPathData(String shape, double[] coords) {
+		int n = coords.length / 2;
+		StringBuilder sb = new StringBuilder(n * 48);
+		sb.append(String.format(Locale.ROOT, "M%.4f,%.4f", coords[0], coords[1]));
+		for (int i = 1; i <= n; i++) {
+			int k = i % n;
+			if (shape.equals("glyph")) {
+				int p0 = (i - 2 + n) % n, p1 = i - 1, p3 = (i + 1) % n;
+				double c1x = coords[p1 * 2] + (coords[k * 2] - coords[p0 * 2]) / 6;
+				double c1y = coords[p1 * 2 + 1] + (coords[k * 2 + 1] - coords[p0 * 2 + 1]) / 6;
+				double c2x = coords[k * 2] - (coords[p3 * 2] - coords[p1 * 2]) / 6;
+				double c2y = coords[k * 2 + 1] - (coords[p3 * 2 + 1] - coords[p1 * 2 + 1]) / 6;
+				sb.append(String.format(Locale.ROOT, " C%.4f,%.4f %.4f,%.4f %.4f,%.4f", c1x, c1y, c2x, c2y, coords[k * 2], coords[k * 2 + 1]));
+			} else if (k != 0) {
+				sb.append(String.format(Locale.ROOT, " L%.4f,%.4f", coords[k * 2], coords[k * 2 + 1]));
+			}
+		}
+		return sb.append('Z').toString();
+	}
+}
@@ -0,0 +1,162 @@
+package cnctoolpath.benchmarks;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ *  Throughput of every stage of the toolpath pipeline on its own, from reading
+ *  the SVG file to writing G-code. Each stage gets the output of the stages
+ *  before it as input, prepared once per trial.
+ *
+ *  The tool radius is TOOL_RADIUS outwards, which makes the sharp concave
+ *  corners of star and glyph produce loops for createAdjustedToolPath. The
+ *  maximum segment length is half an average edge, so the subdivision doubles
+ *  the point count.
+ *
+ *  Allocation rates are reported with the gc profiler:
+ *  java -jar benchmarks/target/benchmarks.jar -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StageBenchmark {
+
+	static final double TOOL_RADIUS = 2;
+
+	@Param({ "circle", "star", "glyph" })
+	public String shape;
+
+	@Param({ "1000", "100000" })
+	public int points;
+
+	private File svgFile;
+	private Object offsetter;
+	private Object polygon;
+	private double toolRadius;
+	private float maxPathSegmentLength;
+	private Object offsetPolygon;
+	private Object finePolygon;
+	private Object duplicatedPolygon;
+	private Object contour;
+	private PrintStream nullOut;
+	private Object gCodeWriter;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Throwable {
+		double[] coords = Shapes.create(shape, points);
+		double edge = Shapes.perimeter(coords) / points;
+
+		svgFile = File.createTempFile("benchmark", ".svg");
+		String svg = "<svg xmlns=\"http://www.w3.org/2000/svg\"><path id=\"" + shape + "\" d=\"" + Shapes.svgPathData(shape, coords)
+				+ "\"/></svg>";
+		Files.writeString(svgFile.toPath(), svg, StandardCharsets.UTF_8);
+
+		offsetter = Stages.defaultOffsetter();
+		polygon = Stages.polyline(coords);
+		toolRadius = TOOL_RADIUS;
+		maxPathSegmentLength = (float) (edge / 2);
+		offsetPolygon = Stages.calculateOffsetPolygon(polygon, toolRadius, offsetter);
+		finePolygon = Stages.ensureMinimalSegmentLength(offsetPolygon, maxPathSegmentLength);
+
+		double[] doubled = new double[coords.length * 2];
+		for (int i = 0; i < coords.length; i += 2) {
+			doubled[i * 2] = doubled[i * 2 + 2] = coords[i];
+			doubled[i * 2 + 1] = doubled[i * 2 + 3] = coords[i + 1];
+		}
+		duplicatedPolygon = Stages.polyline(doubled);
+
+		contour = Stages.contour(shape, finePolygon);
+		nullOut = new PrintStream(OutputStream.nullOutputStream());
+		gCodeWriter = Stages.gCodeWriter(new NullChannel());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		svgFile.delete();
+	}
+
+	@Benchmark
+	public Object readPathFromSVGFile() throws Throwable {
+		return Stages.readPolylineFromSVGFile(svgFile);
+	}
+
+	@Benchmark
+	public Object calculateOffsetPolygon() throws Throwable {
+		return Stages.calculateOffsetPolygon(polygon, toolRadius, offsetter);
+	}
+
+	@Benchmark
+	public Object ensureMinimalSegmentLength() throws Throwable {
+		return Stages.ensureMinimalSegmentLength(offsetPolygon, maxPathSegmentLength);
+	}
+
+	@Benchmark
+	public Object createAdjustedToolPath() throws Throwable {
+		return Stages.createAdjustedToolPath(finePolygon);
+	}
+
+	@Benchmark
+	public Object removeDuplicates() throws Throwable {
+		return Stages.removeDuplicates(duplicatedPolygon);
+	}
+
+	@Benchmark
+	public void dumpToCartesian() throws Throwable {
+		Stages.dumpTo(contour, nullOut, false);
+	}
+
+	@Benchmark
+	public void dumpToPolar() throws Throwable {
+		Stages.dumpTo(contour, nullOut, true);
+	}
+
+	@Benchmark
+	public void writeGCode() throws Throwable {
+		Stages.writeContour(gCodeWriter, shape, finePolygon);
+		Stages.flush(gCodeWriter);
+	}
+
+	/*
+	 *  Accepts and drops everything, so only the formatting is measured.
+	 */
+	private static class NullChannel implements WritableByteChannel {
+		@Override
+		public int write(ByteBuffer src) {
+			int n = src.remaining();
+			src.position(src.limit());
+			return n;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package cnctoolpath.benchmarks;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.channels.WritableByteChannel;
+
+/*
+ *  Entry points into the toolpath classes.
+ *
+ *  The application classes live in the unnamed package, which Java code in a
+ *  named package can not refer to, while JMH refuses benchmarks in the unnamed
+ *  package. The benchmarks therefore reach the application through method
+ *  handles looked up once by class name. The handles are static final, so the
+ *  JIT inlines them like direct calls; application objects are passed around
+ *  as Object. The stages of the calculator are reached through the public
+ *  ToolPathStages, which binds them at compile time.
+ */
+final class Stages {
+
+	private static final MethodHandle WRAP_POLYLINE;
+	private static final MethodHandle OFFSETTER_DEFAULT;
+	private static final MethodHandle READ_PATH;
+	private static final MethodHandle READER;
+	private static final MethodHandle OFFSET_POLYGON;
+	private static final MethodHandle ENSURE_MINIMAL_SEGMENT_LENGTH;
+	private static final MethodHandle CREATE_ADJUSTED_TOOL_PATH;
+	private static final MethodHandle REMOVE_DUPLICATES;
+	private static final MethodHandle NEW_CONTOUR;
+	private static final MethodHandle DUMP_TO;
+	private static final MethodHandle NEW_GCODE_WRITER;
+	private static final MethodHandle WRITE_CONTOUR;
+	private static final MethodHandle FLUSH;
+
+	static {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			Class<?> polyline = Class.forName("Polyline2D");
+			Class<?> stages = Class.forName("ToolPathStages");
+			Class<?> offsetter = Class.forName("PolygonOffsetter");
+			Class<?> reader = Class.forName("SVGPathReader");
+			Class<?> contour = Class.forName("Contour2D");
+			Class<?> writer = Class.forName("GCodeWriter");
+
+			WRAP_POLYLINE = erase(lookup.findStatic(polyline, "wrap", MethodType.methodType(polyline, double[].class, int.class)));
+			OFFSETTER_DEFAULT = erase(lookup.findStaticGetter(offsetter, "DEFAULT", offsetter));
+			READER = erase(lookup.findStatic(reader, "getInstance", MethodType.methodType(reader)));
+			READ_PATH = erase(lookup.findVirtual(reader, "readPolylineFromSVGFile", MethodType.methodType(polyline, File.class)));
+			OFFSET_POLYGON = erase(lookup.findStatic(stages, "calculateOffsetPolygon",
+					MethodType.methodType(polyline, polyline, double.class, offsetter)));
+			ENSURE_MINIMAL_SEGMENT_LENGTH = erase(lookup.findStatic(stages, "ensureMinimalSegmentLength",
+					MethodType.methodType(polyline, polyline, float.class)));
+			CREATE_ADJUSTED_TOOL_PATH = erase(lookup.findStatic(stages, "createAdjustedToolPath", MethodType.methodType(polyline, polyline)));
+			REMOVE_DUPLICATES = erase(lookup.findStatic(stages, "removeDuplicates", MethodType.methodType(polyline, polyline)));
+			NEW_CONTOUR = erase(lookup.findConstructor(contour, MethodType.methodType(void.class, String.class, polyline, java.awt.Color.class)));
+			DUMP_TO = erase(lookup.findVirtual(contour, "dumpTo", MethodType.methodType(void.class, PrintStream.class, boolean.class)));
+			NEW_GCODE_WRITER = erase(lookup.findConstructor(writer, MethodType.methodType(void.class, WritableByteChannel.class)));
+			WRITE_CONTOUR = erase(lookup.findVirtual(writer, "writeContour", MethodType.methodType(void.class, String.class, polyline)));
+			FLUSH = erase(lookup.findVirtual(writer, "flush", MethodType.methodType(void.class)));
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private Stages() {
+	}
+
+	/*
+	 *  Replaces all application types in the signature by Object.
+	 */
+	private static MethodHandle erase(MethodHandle handle) {
+		MethodType type = handle.type();
+		for (int i = 0; i < type.parameterCount(); i++) {
+			if (isApplicationType(type.parameterType(i))) {
+				type = type.changeParameterType(i, Object.class);
+			}
+		}
+		if (isApplicationType(type.returnType())) {
+			type = type.changeReturnType(Object.class);
+		}
+		return handle.asType(type);
+	}
+
+	private static boolean isApplicationType(Class<?> c) {
+		return !c.isPrimitive() && !c.isArray() && c.getPackageName().isEmpty();
+	}
+
+	static Object polyline(double[] coords) throws Throwable {
+		return WRAP_POLYLINE.invokeExact(coords, coords.length / 2);
+	}
+
+	static Object defaultOffsetter() throws Throwable {
+		return OFFSETTER_DEFAULT.invokeExact();
+	}
+
+	static Object readPolylineFromSVGFile(File file) throws Throwable {
+		return READ_PATH.invokeExact(READER.invokeExact(), file);
+	}
+
+	static Object calculateOffsetPolygon(Object polygon, double offset, Object offsetter) throws Throwable {
+		return OFFSET_POLYGON.invokeExact(polygon, offset, offsetter);
+	}
+
+	static Object ensureMinimalSegmentLength(Object polygon, float maxPathSegmentLength) throws Throwable {
+		return ENSURE_MINIMAL_SEGMENT_LENGTH.invokeExact(polygon, maxPathSegmentLength);
+	}
+
+	static Object createAdjustedToolPath(Object polygon) throws Throwable {
+		return CREATE_ADJUSTED_TOOL_PATH.invokeExact(polygon);
+	}
+
+	static Object removeDuplicates(Object polygon) throws Throwable {
+		return REMOVE_DUPLICATES.invokeExact(polygon);
+	}
+
+	static Object contour(String name, Object polyline) throws Throwable {
+		return NEW_CONTOUR.invokeExact(name, polyline, (java.awt.Color) null);
+	}
+
+	static void dumpTo(Object contour, PrintStream out, boolean polar) throws Throwable {
+		DUMP_TO.invokeExact(contour, out, polar);
+	}
+
+	static Object gCodeWriter(WritableByteChannel channel) throws Throwable {
+		return NEW_GCODE_WRITER.invokeExact(channel);
+	}
+
+	static void writeContour(Object writer, String name, Object polyline) throws Throwable {
+		WRITE_CONTOUR.invokeExact(writer, name, polyline);
+	}
+
+	static void flush(Object writer) throws Throwable {
+		FLUSH.invokeExact(writer);
+	}
+}